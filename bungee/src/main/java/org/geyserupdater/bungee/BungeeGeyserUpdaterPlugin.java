@@ -3,46 +3,95 @@ package org.geyserupdater.bungee;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.event.PlayerDisconnectEvent;
 import net.md_5.bungee.api.event.PostLoginEvent;
+import net.md_5.bungee.api.event.ServerSwitchEvent;
 import net.md_5.bungee.api.plugin.Command;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.api.plugin.Plugin;
 import net.md_5.bungee.event.EventHandler;
+import org.geyserupdater.core.AdminRegistry;
+import org.geyserupdater.core.CheckHistory;
+import org.geyserupdater.core.CheckSummary;
 import org.geyserupdater.core.Config;
 import org.geyserupdater.core.ConfigManager;
 import org.geyserupdater.core.Platform;
+import org.geyserupdater.core.ProgressListener;
+import org.geyserupdater.core.QuietWindow;
+import org.geyserupdater.core.StartupPolicy;
 import org.geyserupdater.core.UpdaterService;
 import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.metrics.MetricsServer;
+import org.geyserupdater.core.restart.BackendStatus;
+import org.geyserupdater.core.restart.RestartCoordinator;
+import org.geyserupdater.core.webhook.WebhookServer;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class BungeeGeyserUpdaterPlugin extends Plugin implements Listener {
     private ConfigManager cfgMgr;
-    private Config cfg;
+    private CheckHistory history;
+    // Both are null until the async bootstrap has finished
+    private volatile Config cfg;
+    private volatile UpdaterService service;
+    private RestartCoordinator coordinator;
+    private MetricsServer metricsServer;
+    private WebhookServer webhook;
+    private final AdminRegistry<ProxiedPlayer> admins = new AdminRegistry<>();
+    private final AtomicBoolean quietRecheckScheduled = new AtomicBoolean();
 
     @Override
     public void onEnable() {
         if (!getDataFolder().exists()) getDataFolder().mkdirs();
-        this.cfgMgr = new ConfigManager(getDataFolder().toPath());
-        this.cfg = cfgMgr.loadOrCreateDefault();
-
-        // Execute migration
-        migrateNestedPluginsIfNeeded(getDataFolder().toPath().getParent());
+        this.cfgMgr = new ConfigManager(getDataFolder().toPath(), new BungeeLogger());
+        this.history = new CheckHistory(getDataFolder().toPath());
 
         getProxy().getPluginManager().registerListener(this, this);
         getProxy().getPluginManager().registerCommand(this, new UpdateCommand());
 
+        // Config parsing, migration and the HTTP client are all set up off the enable thread
+        getProxy().getScheduler().runAsync(this, this::bootstrap);
+    }
+
+    private void bootstrap() {
+        Config loaded = cfgMgr.loadOrCreateDefault();
+        this.service = new UpdaterService(new BungeeLogger(), loaded);
+        this.cfg = loaded;
+        history.lastSuccess().ifPresent(service.metrics()::seedLastSuccess);
+        if (cfg.metrics.enabled) {
+            startMetrics();
+        }
+
+        service.cleanStaging(getDataFolder().toPath().getParent());
+        // Players who joined while we were loading
+        rebuildAdmins();
+
+        // Execute migration
+        migrateNestedPluginsIfNeeded(getDataFolder().toPath().getParent());
+
         if (!cfg.enabled) {
             getLogger().info(cfg.messages.pluginDisabled);
             return;
         }
 
+        if (cfg.restartCoordinator.enabled) {
+            startCoordinator();
+        }
+
+        if (cfg.webhook.enabled) {
+            startWebhook();
+        }
+
         if (cfg.checkOnStartup) {
-            info(cfg.messages.startUpCheck);
-            runAsyncCheck(false, null);
+            scheduleStartupCheck();
         }
 
         if (cfg.periodic.enabled && cfg.periodic.intervalHours > 0) {
@@ -53,28 +102,128 @@ public class BungeeGeyserUpdaterPlugin extends Plugin implements Listener {
         }
     }
 
+    @Override
+    public void onDisable() {
+        if (coordinator != null) coordinator.close();
+        if (metricsServer != null) metricsServer.close();
+        if (webhook != null) webhook.close();
+        if (service != null) service.close();
+        admins.clear();
+    }
+
+    private void startCoordinator() {
+        coordinator = new RestartCoordinator(new BungeeLogger(), cfg, new BackendStatus() {
+            @Override
+            public int playerCount(String server) {
+                ServerInfo info = getProxy().getServerInfo(server);
+                return info == null ? -1 : info.getPlayers().size();
+            }
+
+            @Override
+            public int totalPlayers() {
+                return getProxy().getOnlineCount();
+            }
+        });
+        try {
+            coordinator.start();
+            info(cfg.messages.coordinatorStarted.replace("{address}", String.valueOf(coordinator.address())));
+        } catch (IOException e) {
+            getLogger().warning(cfg.messages.coordinatorFailed.replace("{error}", String.valueOf(e.getMessage())));
+            coordinator.close();
+            coordinator = null;
+        }
+    }
+
+    private void startMetrics() {
+        metricsServer = new MetricsServer(cfg.metrics, service);
+        try {
+            metricsServer.start();
+            info(cfg.messages.metricsStarted.replace("{address}", cfg.metrics.host + ":" + metricsServer.address().getPort()));
+        } catch (IOException e) {
+            getLogger().warning(cfg.messages.metricsFailed.replace("{error}", String.valueOf(e.getMessage())));
+            metricsServer.close();
+            metricsServer = null;
+        }
+    }
+
+    private void startWebhook() {
+        // A push announces a build worth having now, so its check does not wait for the quiet window
+        webhook = new WebhookServer(new BungeeLogger(), cfg, () -> runAsyncCheck(false, null, false));
+        try {
+            webhook.start();
+            info(cfg.messages.webhookStarted
+                    .replace("{address}", cfg.webhook.host + ":" + webhook.address().getPort())
+                    .replace("{path}", webhook.path()));
+        } catch (IOException e) {
+            getLogger().warning(cfg.messages.webhookFailed.replace("{error}", String.valueOf(e.getMessage())));
+            webhook.close();
+            webhook = null;
+        }
+    }
+
+    private void scheduleStartupCheck() {
+        switch (StartupPolicy.decide(cfg, history, Instant.now())) {
+            case SKIP:
+                info(cfg.messages.startUpCheckSkipped.replace("{minutes}", String.valueOf(cfg.startup.skipIfCheckedWithinMinutes)));
+                break;
+            case DEFER:
+                info(cfg.messages.startUpCheckDeferred);
+                // BungeeCord has no "startup finished" event to wait for; listeners are bound shortly
+                // after plugins are enabled, so give it startup.settleSeconds instead
+                getProxy().getScheduler().schedule(this, () -> {
+                    info(cfg.messages.startUpCheck);
+                    runAsyncCheck(false, null);
+                }, Math.max(0, cfg.startup.settleSeconds), TimeUnit.SECONDS);
+                break;
+            default:
+                info(cfg.messages.startUpCheck);
+                runAsyncCheck(false, null);
+        }
+    }
+
     private void runAsyncCheck(boolean manual, CommandSender sender) {
+        // Scheduled checks may wait for the quiet window; manual and login checks always run in full
+        runAsyncCheck(manual, sender, !manual && sender == null);
+    }
+
+    private void runAsyncCheck(boolean manual, CommandSender sender, boolean deferrable) {
         ProxyServer.getInstance().getScheduler().runAsync(this, () -> {
-            UpdaterService service = new UpdaterService(new BungeeLogger(), cfg);
+            // Any check starting now covers pushes received so far
+            if (webhook != null) webhook.checkStarted();
             if (manual) {
                 send(sender, cfg.messages.prefix + cfg.messages.manualTriggered);
             } else {
                 info(cfg.messages.checking);
             }
             Path pluginsDir = getDataFolder().toPath().getParent(); // This is directly under plugins
-            List<UpdaterService.UpdateOutcome> results = service.checkAndUpdate(Platform.BUNGEECORD, pluginsDir);
-
+            // Outside the quiet window a deferrable check only finds out what is pending
+            boolean deferHeavy = deferrable && !isQuietNow();
+            List<UpdaterService.UpdateOutcome> results = service.checkAndUpdate(Platform.BUNGEECORD, pluginsDir, deferHeavy,
+                    // Whoever ran /geyserupdate sees the download move; other checks stay quiet
+                    manual ? p -> msg(sender, p.format(cfg.messages)) : ProgressListener.NONE);
+
+            if (results.isEmpty()) {
+                msg(sender, cfg.messages.noTarget);
+            }
             boolean anyUpdated = false;
             for (UpdaterService.UpdateOutcome r : results) {
                 if (r.error.isPresent()) {
-                    msg(sender, cfg.messages.failed.replace("{project}", r.project.name().toLowerCase()).replace("{error}", r.error.get()));
+                    msg(sender, cfg.messages.failed.replace("{project}", r.project.id()).replace("{error}", r.error.get()));
+                } else if (r.pending) {
+                    msg(sender, cfg.messages.updatePending.replace("{project}", r.project.id()));
                 } else if (r.skippedNoChange) {
-                    msg(sender, cfg.messages.upToDate.replace("{project}", r.project.name().toLowerCase()));
+                    msg(sender, cfg.messages.upToDate.replace("{project}", r.project.id()));
                 } else if (r.updated) {
                     anyUpdated = true;
-                    msg(sender, cfg.messages.updated.replace("{project}", r.project.name().toLowerCase()));
+                    msg(sender, cfg.messages.updated.replace("{project}", r.project.id()));
                 }
             }
+            broadcast(CheckSummary.of(results), sender);
+            if (results.stream().anyMatch(r -> r.pending)) {
+                scheduleQuietRecheck();
+            } else if (!results.isEmpty() && results.stream().noneMatch(r -> r.error.isPresent())) {
+                history.recordSuccess(anyUpdated ? "updated" : "upToDate");
+            }
             if (anyUpdated) {
                 info(cfg.messages.promptRestart);
                 if (cfg.postUpdate.runRestartCommand && cfg.postUpdate.restartCommand != null && !cfg.postUpdate.restartCommand.isBlank()) {
@@ -86,11 +235,33 @@ public class BungeeGeyserUpdaterPlugin extends Plugin implements Listener {
         });
     }
 
+    private boolean isQuietNow() {
+        return QuietWindow.isQuiet(cfg.quietWindow, getProxy().getOnlineCount(), LocalTime.now());
+    }
+
+    /** Polls for the quiet window (no network traffic) and then runs the deferred check in full. */
+    private void scheduleQuietRecheck() {
+        if (!quietRecheckScheduled.compareAndSet(false, true)) return;
+        getProxy().getScheduler().schedule(this, () -> {
+            quietRecheckScheduled.set(false);
+            if (isQuietNow()) {
+                runAsyncCheck(false, null);
+            } else {
+                scheduleQuietRecheck();
+            }
+        }, Math.max(1, cfg.quietWindow.recheckMinutes), TimeUnit.MINUTES);
+    }
+
     private class UpdateCommand extends Command {
         public UpdateCommand() { super("geyserupdate", "geyserupdater.admin", new String[0]); }
 
         @Override
         public void execute(CommandSender sender, String[] args) {
+            if (cfg == null) {
+                Config.Messages m = new Config().messages;
+                sender.sendMessage(new TextComponent(m.prefix + m.stillStarting));
+                return;
+            }
             // Check for reload subcommand
             if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
                 if (!sender.hasPermission("geyserupdater.reload")) {
@@ -99,6 +270,8 @@ public class BungeeGeyserUpdaterPlugin extends Plugin implements Listener {
                 }
                 try {
                     cfg = cfgMgr.loadOrCreateDefault();
+                    service.setConfig(cfg);
+                    rebuildAdmins(); // the permission node may have changed
                     sender.sendMessage(new TextComponent(cfg.messages.prefix + cfg.messages.reloadSuccess));
                 } catch (Exception e) {
                     sender.sendMessage(new TextComponent(cfg.messages.prefix + cfg.messages.reloadFailed.replace("{error}", e.getMessage())));
@@ -112,14 +285,56 @@ public class BungeeGeyserUpdaterPlugin extends Plugin implements Listener {
 
     @EventHandler
     public void onPostLogin(PostLoginEvent e) {
-        if (!cfg.enabled || !cfg.adminLogin.enabled) return;
         ProxiedPlayer p = e.getPlayer();
-        if (p.hasPermission(cfg.adminLogin.permission)) {
+        refreshAdmin(p);
+        if (cfg == null || !cfg.enabled || !cfg.adminLogin.enabled) return;
+        if (admins.contains(p.getUniqueId())) {
             info(cfg.messages.adminLoginCheck);
             runAsyncCheck(false, p);
         }
     }
 
+    @EventHandler
+    public void onDisconnect(PlayerDisconnectEvent e) {
+        admins.remove(e.getPlayer().getUniqueId());
+    }
+
+    // BungeeCord has no permission-change event; a server switch is the usual point where they are re-evaluated
+    @EventHandler
+    public void onServerSwitch(ServerSwitchEvent e) {
+        refreshAdmin(e.getPlayer());
+    }
+
+    private void refreshAdmin(ProxiedPlayer p) {
+        if (cfg == null) return;
+        admins.update(p.getUniqueId(), p, p.hasPermission(cfg.adminLogin.permission));
+    }
+
+    private void rebuildAdmins() {
+        admins.clear();
+        for (ProxiedPlayer p : getProxy().getPlayers()) {
+            refreshAdmin(p);
+        }
+    }
+
+    /**
+     * Tells everyone who did not trigger the check about an applied update or a failed scheduled
+     * check, in one line per check.
+     */
+    private void broadcast(CheckSummary summary, CommandSender sender) {
+        if (!summary.anyUpdated() && !(summary.anyFailed() && sender == null)) return;
+        String line = summary.format(cfg.messages);
+        if (cfg.postUpdate.notifyConsole && sender instanceof ProxiedPlayer) {
+            info(line);
+        }
+        if (cfg.postUpdate.notifyPlayersWithPermission) {
+            TextComponent component = new TextComponent(cfg.messages.prefix + line);
+            for (ProxiedPlayer admin : admins.admins()) {
+                if (admin != sender) admin.sendMessage(component);
+            }
+        }
+    }
+
     private void msg(CommandSender sender, String msg) {
         if (sender != null) send(sender, cfg.messages.prefix + msg);
         else info(msg);
@@ -150,7 +365,7 @@ public class BungeeGeyserUpdaterPlugin extends Plugin implements Listener {
 
                     String name = p.getFileName().toString().toLowerCase();
 
-                    return name.endsWith(".jar") && (name.contains("geyser") || name.contains("floodgate"));
+                    return cfg.targets.all().stream().anyMatch(t -> t.matches(name));
 
                 }).forEach(p -> {
 
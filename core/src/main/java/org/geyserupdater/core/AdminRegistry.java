@@ -0,0 +1,46 @@
+package org.geyserupdater.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Online players holding the admin permission, kept current from join, quit and permission-change
+ * events so broadcasts touch only the admins instead of checking every online player.
+ *
+ * @param <P> the platform's player type
+ */
+public final class AdminRegistry<P> {
+    private final Map<UUID, P> admins = new ConcurrentHashMap<>();
+
+    /** Adds or removes the player depending on whether they currently hold the permission. */
+    public void update(UUID id, P player, boolean admin) {
+        if (admin) {
+            admins.put(id, player);
+        } else {
+            admins.remove(id);
+        }
+    }
+
+    public void remove(UUID id) {
+        admins.remove(id);
+    }
+
+    public void clear() {
+        admins.clear();
+    }
+
+    public boolean contains(UUID id) {
+        return admins.containsKey(id);
+    }
+
+    public Collection<P> admins() {
+        return Collections.unmodifiableCollection(admins.values());
+    }
+
+    public int size() {
+        return admins.size();
+    }
+}
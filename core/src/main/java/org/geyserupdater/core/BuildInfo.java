@@ -0,0 +1,32 @@
+package org.geyserupdater.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Metadata of the latest build of a project, as returned by
+ * {@code /v2/projects/{project}/versions/latest/builds/latest}.
+ */
+public final class BuildInfo {
+    public final String project;
+    public final String version;
+    public final int build;
+    // download key -> sha256
+    private final Map<String, String> sha256;
+
+    public BuildInfo(String project, String version, int build, Map<String, String> sha256) {
+        this.project = project;
+        this.version = version;
+        this.build = build;
+        this.sha256 = Collections.unmodifiableMap(sha256);
+    }
+
+    public Optional<String> sha256(String downloadKey) {
+        return Optional.ofNullable(sha256.get(downloadKey));
+    }
+
+    public boolean hasDownload(String downloadKey) {
+        return sha256.containsKey(downloadKey);
+    }
+}
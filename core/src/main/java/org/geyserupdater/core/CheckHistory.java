@@ -0,0 +1,66 @@
+package org.geyserupdater.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Persists the time and result of the last successful update check, so a restart
+ * shortly after a check does not have to repeat it.
+ */
+public class CheckHistory {
+    private static final String FILE_NAME = "last-check.properties";
+
+    private final Path file;
+
+    public CheckHistory(Path dataFolder) {
+        this.file = dataFolder.resolve(FILE_NAME);
+    }
+
+    public synchronized Optional<Instant> lastSuccess() {
+        Properties props = read();
+        try {
+            String ts = props.getProperty("lastSuccess");
+            return ts == null ? Optional.empty() : Optional.of(Instant.ofEpochMilli(Long.parseLong(ts)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public synchronized Optional<String> lastResult() {
+        return Optional.ofNullable(read().getProperty("lastResult"));
+    }
+
+    public synchronized void recordSuccess(String result) {
+        Properties props = new Properties();
+        props.setProperty("lastSuccess", String.valueOf(System.currentTimeMillis()));
+        props.setProperty("lastResult", result);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "GeyserUpdater check history");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // History is an optimisation only; a lost write just means the next startup checks again
+        }
+    }
+
+    private Properties read() {
+        Properties props = new Properties();
+        if (!Files.exists(file)) return props;
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            // Treat an unreadable file as "never checked"
+        }
+        return props;
+    }
+}
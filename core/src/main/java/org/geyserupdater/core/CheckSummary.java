@@ -0,0 +1,49 @@
+package org.geyserupdater.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The outcome of one check folded into a single line for broadcasting. */
+public final class CheckSummary {
+    private final List<String> updated = new ArrayList<>();
+    private final List<String> upToDate = new ArrayList<>();
+    private final List<String> failed = new ArrayList<>();
+
+    public static CheckSummary of(List<UpdaterService.UpdateOutcome> outcomes) {
+        CheckSummary s = new CheckSummary();
+        for (UpdaterService.UpdateOutcome o : outcomes) {
+            if (o.error.isPresent()) {
+                s.failed.add(o.project.id() + " (" + o.error.get() + ")");
+            } else if (o.updated) {
+                s.updated.add(o.project.id());
+            } else if (o.skippedNoChange) {
+                s.upToDate.add(o.project.id());
+            }
+        }
+        return s;
+    }
+
+    public boolean anyUpdated() {
+        return !updated.isEmpty();
+    }
+
+    public boolean anyFailed() {
+        return !failed.isEmpty();
+    }
+
+    public List<String> updated() {
+        return Collections.unmodifiableList(updated);
+    }
+
+    public String format(Config.Messages m) {
+        return m.checkSummary
+                .replace("{updated}", join(updated))
+                .replace("{upToDate}", join(upToDate))
+                .replace("{failed}", join(failed));
+    }
+
+    private static String join(List<String> items) {
+        return items.isEmpty() ? "-" : String.join(", ", items);
+    }
+}
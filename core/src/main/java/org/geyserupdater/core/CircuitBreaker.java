@@ -0,0 +1,136 @@
+package org.geyserupdater.core;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Guards calls to the download API. After {@code failureThreshold} consecutive failures the breaker
+ * opens and callers get the cached failure straight away instead of waiting out timeouts. After the
+ * cool-down it half-opens and lets exactly one probe through; its result closes or re-opens it.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Supplier<Config.CircuitBreaker> settings;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private boolean probeInFlight;
+    private String lastError = "";
+
+    public CircuitBreaker(Supplier<Config.CircuitBreaker> settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Asks to start a round of upstream calls. Returns false while open, and while half-open
+     * if another caller already holds the probe.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case OPEN:
+                if (System.nanoTime() - openUntilNanos < 0) return false;
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) return false;
+                probeInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /** Whether upstream calls are currently being refused. */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openUntilNanos < 0;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure(String error) {
+        lastError = error;
+        consecutiveFailures++;
+        Config.CircuitBreaker c = settings.get();
+        if (state == State.HALF_OPEN || (c.failureThreshold > 0 && consecutiveFailures >= c.failureThreshold)) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(1, c.coolDownSeconds));
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Starts one check's worth of upstream calls. The check counts as one failure if any of its
+     * calls failed, however many did, and resets the count only if all of them succeeded; call
+     * {@link Round#finish()} once it is done.
+     */
+    public Round round() {
+        return new Round();
+    }
+
+    /**
+     * Gives the probe back if the caller finished without reporting a result (e.g. it was
+     * interrupted), so the next caller can probe instead of the breaker staying half-open forever.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) probeInFlight = false;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /** The failure that opened the breaker, while it is open. */
+    public synchronized Optional<String> cachedFailure() {
+        return state == State.CLOSED ? Optional.empty() : Optional.of(lastError);
+    }
+
+    /** Seconds until the next probe is allowed; 0 if one is allowed now. */
+    public synchronized long retryInSeconds() {
+        if (state != State.OPEN) return 0;
+        return Math.max(0, TimeUnit.NANOSECONDS.toSeconds(openUntilNanos - System.nanoTime()) + 1);
+    }
+
+    /** The calls of one check. Its first failure counts straight away; success only at the end. */
+    public final class Round {
+        // guarded by the breaker
+        private boolean failed;
+        private boolean succeeded;
+
+        private Round() {}
+
+        public void onSuccess() {
+            synchronized (CircuitBreaker.this) {
+                succeeded = true;
+            }
+        }
+
+        public void onFailure(String error) {
+            synchronized (CircuitBreaker.this) {
+                if (failed) {
+                    lastError = error;
+                    return;
+                }
+                failed = true;
+                CircuitBreaker.this.onFailure(error);
+            }
+        }
+
+        /** Ends the round; one whose calls all succeeded closes the breaker. */
+        public void finish() {
+            synchronized (CircuitBreaker.this) {
+                if (succeeded && !failed) CircuitBreaker.this.onSuccess();
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.geyserupdater.core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Config {
     public boolean enabled = true;
 
@@ -7,23 +10,78 @@ public class Config {
 
     public boolean checkOnStartup = true;
 
+    public Startup startup = new Startup();
+    public static class Startup {
+        public int skipIfCheckedWithinMinutes = 60;
+        public boolean deferUntilLoaded = true;
+        public int settleSeconds = 10;
+    }
+
     public Periodic periodic = new Periodic();
     public static class Periodic {
         public boolean enabled = true;
         public int intervalHours = 12;
     }
 
+    public Throttle throttle = new Throttle();
+    public static class Throttle {
+        public boolean enabled = true;
+        public double msptThreshold = 40.0;
+        public double minTps = 19.0;
+        public int maxPauseSeconds = 300;
+    }
+
+    public QuietWindow quietWindow = new QuietWindow();
+    public static class QuietWindow {
+        public boolean enabled = false;
+        public int maxPlayers = 5;
+        public List<String> timeRanges = new ArrayList<>(List.of("02:00-06:00"));
+        public int recheckMinutes = 10;
+    }
+
+    public Download download = new Download();
+    public static class Download {
+        public String baseUrl = "https://download.geysermc.org/v2/projects";
+        public int segments = 4;
+        public int stallSeconds = 30;
+        public int stallBytes = 16384;
+        public int progressSeconds = 5;
+    }
+
+    public CircuitBreaker circuitBreaker = new CircuitBreaker();
+    public static class CircuitBreaker {
+        public int failureThreshold = 3;
+        public int coolDownSeconds = 300;
+    }
+
+    public Metrics metrics = new Metrics();
+    public static class Metrics {
+        public boolean enabled = false;
+        public String host = "127.0.0.1";
+        public int port = 9465;
+    }
+
+    public Webhook webhook = new Webhook();
+    public static class Webhook {
+        public boolean enabled = false;
+        public String host = "127.0.0.1";
+        public int port = 9466;
+        public String path = "/geyserupdater/check";
+        public String secret = "";
+    }
+
+    public Staging staging = new Staging();
+    public static class Staging {
+        public String fsync = "file";
+    }
+
     public AdminLogin adminLogin = new AdminLogin();
     public static class AdminLogin {
         public boolean enabled = true;
         public String permission = "geyserupdater.admin";
     }
 
-    public Targets targets = new Targets();
-    public static class Targets {
-        public boolean geyser = true;
-        public boolean floodgate = true;
-    }
+    public TargetRegistry targets = TargetRegistry.defaults();
 
     public PostUpdate postUpdate = new PostUpdate();
     public static class PostUpdate {
@@ -33,6 +91,17 @@ public class Config {
         public String restartCommand = "restart";
     }
 
+    public RestartCoordinator restartCoordinator = new RestartCoordinator();
+    public static class RestartCoordinator {
+        public boolean enabled = false;
+        public String host = "127.0.0.1";
+        public int port = 25590;
+        public String serverName = "";
+        public int maxConcurrent = 1;
+        public int returnTimeoutMinutes = 10;
+        public String secret = "";
+    }
+
     public Messages messages = new Messages();
     public static class Messages {
         public String prefix = "§a[GeyserUpdater]§r ";
@@ -43,12 +112,16 @@ public class Config {
         public String failed = "Failed to update {project}: {error}";
         public String promptRestart = "Update applied. Server restart required.";
         public String startUpCheck = "Starting automatic update check on startup.";
+        public String startUpCheckSkipped = "Skipping startup check: last successful check was less than {minutes} minutes ago.";
+        public String startUpCheckDeferred = "Startup update check deferred until the server has finished loading.";
         public String periodicCheck = "Scheduled periodic update check (every {hours} hours).";
         public String adminLoginCheck = "Admin login detected, executing update check.";
         public String manualTriggered = "Starting manual update check.";
         public String nothingToDo = "No valid targets. Please check config.yml.";
         public String done = "Update check completed.";
         public String noPermission = "You do not have permission.";
+        // Shown before the language file has been read, so only this default is ever used
+        public String stillStarting = "GeyserUpdater is still starting, try again in a moment.";
         public String pluginDisabled = "[GeyserUpdater] disabled by config";
         public String downloadFailed = "Download failed: {error}";
         public String hashComparisonFailed = "Hash comparison failed. Continuing with overwrite update: {error}";
@@ -57,5 +130,32 @@ public class Config {
         public String dataDirectoryError = "Could not create data directory: {error}";
         public String reloadSuccess = "Configuration reloaded successfully.";
         public String reloadFailed = "Failed to reload configuration: {error}";
+        public String destinationNotFound = "No folder matches {destination}; skipping.";
+        public String checksumMismatch = "Downloaded file does not match the published checksum.";
+        public String invalidJar = "Downloaded file is not a valid jar ({error}); the installed one was kept.";
+        public String stagingCleanupFailed = "Could not remove stale download {file}: {error}";
+        public String invalidFsync = "Unknown staging.fsync value \"{value}\" (expected none, file or directory); using file.";
+        public String updatePending = "{project} has an update pending; it will be installed in the next quiet window.";
+        public String webhookStarted = "Webhook listening on http://{address}{path}";
+        public String webhookFailed = "Could not start the webhook receiver: {error}";
+        public String webhookNoSecret = "webhook.secret is empty; refusing to accept unauthenticated triggers.";
+        public String downloadProgress = "Downloading {project}: {percent}% ({speed}, ETA {eta})";
+        public String webhookTriggered = "Update check requested via webhook from {remote}.";
+        public String webhookTriggerFailed = "Could not schedule the check requested via webhook: {error}";
+        public String metricsStarted = "Metrics endpoint listening on http://{address}/metrics";
+        public String metricsFailed = "Could not start the metrics endpoint: {error}";
+        public String checkSummary = "Update check finished. Updated: {updated} | Up to date: {upToDate} | Failed: {failed}";
+        public String circuitOpen = "Download API unavailable, not retrying for {seconds}s: {error}";
+        public String metadataFailed = "Could not fetch build info for {project}, falling back to a full download: {error}";
+        public String restartQueued = "Restart queued; waiting for a permit from the proxy.";
+        public String restartGranted = "Restart permit granted by the proxy.";
+        public String coordinatorUnreachable = "Could not reach the restart coordinator, retrying: {error}";
+        public String coordinatorStarted = "Restart coordinator listening on {address}.";
+        public String coordinatorFailed = "Restart coordinator error: {error}";
+        public String coordinatorGranted = "Granted restart permit to {server}.";
+        public String coordinatorReleased = "{server} is back and serving players; permit released.";
+        public String coordinatorTimeout = "{server} did not come back within {minutes} minutes; permit released.";
+        public String coordinatorNoSecret = "restartCoordinator.secret is empty; refusing to listen beyond loopback without one.";
+        public String coordinatorUnauthorized = "Rejected a restart coordinator request from {remote}: wrong or missing secret.";
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package org.geyserupdater.core;
 
+import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.util.FsyncPolicy;
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.SafeConstructor;
@@ -10,21 +12,29 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ConfigManager {
+    private final LogAdapter log;
     private final Path dataFolder;
     private final Path configPath;
     private final Path messagesFolder;
+    // SnakeYAML is comparatively expensive to bootstrap, so it is only built on first load
+    private Yaml yaml;
 
-    public ConfigManager(Path dataFolder) {
+    public ConfigManager(Path dataFolder, LogAdapter log) {
+        this.log = log;
         this.dataFolder = dataFolder;
         this.configPath = dataFolder.resolve("config.yml");
         this.messagesFolder = dataFolder.resolve("messages");
     }
 
-    public Config loadOrCreateDefault() {
+    public synchronized Config loadOrCreateDefault() {
         try {
             if (!Files.exists(dataFolder)) Files.createDirectories(dataFolder);
             if (!Files.exists(configPath)) {
@@ -37,19 +47,32 @@ public class ConfigManager {
                     }
                 }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new Config();
+        }
+        return read(true);
+    }
+
+    /**
+     * Reads {@code config.yml} and the messages like {@link #loadOrCreateDefault()}, but never
+     * creates or rewrites a file: a missing config or language file just means defaults.
+     */
+    public synchronized Config load() {
+        return read(false);
+    }
 
-            String content = Files.readString(configPath, StandardCharsets.UTF_8);
+    private Config read(boolean writable) {
+        try {
+            String content = Files.exists(configPath) ? Files.readString(configPath, StandardCharsets.UTF_8) : "";
             // Remove type tag if present from old version
             if (content.startsWith("!!org.geyserupdater.core.Config")) {
                 int idx = content.indexOf('\n');
                 content = (idx >= 0) ? content.substring(idx + 1) : "";
-                Files.writeString(configPath, content, StandardCharsets.UTF_8);
+                if (writable) Files.writeString(configPath, content, StandardCharsets.UTF_8);
             }
 
-            LoaderOptions options = new LoaderOptions();
-            Yaml yaml = new Yaml(new SafeConstructor(options));
-
-            Object obj = yaml.load(content);
+            Object obj = yaml().load(content);
             Config cfg = new Config();
             if (!(obj instanceof Map<?, ?> map)) {
                 return cfg; // default values
@@ -60,20 +83,69 @@ public class ConfigManager {
             cfg.language = asStr(map, "language", cfg.language);
             cfg.checkOnStartup = asBool(map, "checkOnStartup", cfg.checkOnStartup);
 
+            // startup
+            Map<String, Object> startup = asMap(map, "startup");
+            cfg.startup.skipIfCheckedWithinMinutes = asInt(startup, "skipIfCheckedWithinMinutes", cfg.startup.skipIfCheckedWithinMinutes);
+            cfg.startup.deferUntilLoaded = asBool(startup, "deferUntilLoaded", cfg.startup.deferUntilLoaded);
+            cfg.startup.settleSeconds = asInt(startup, "settleSeconds", cfg.startup.settleSeconds);
+
             // periodic
             Map<String, Object> periodic = asMap(map, "periodic");
             cfg.periodic.enabled = asBool(periodic, "enabled", cfg.periodic.enabled);
             cfg.periodic.intervalHours = asInt(periodic, "intervalHours", cfg.periodic.intervalHours);
 
+            // throttle
+            Map<String, Object> throttle = asMap(map, "throttle");
+            cfg.throttle.enabled = asBool(throttle, "enabled", cfg.throttle.enabled);
+            cfg.throttle.msptThreshold = asDouble(throttle, "msptThreshold", cfg.throttle.msptThreshold);
+            cfg.throttle.minTps = asDouble(throttle, "minTps", cfg.throttle.minTps);
+            cfg.throttle.maxPauseSeconds = asInt(throttle, "maxPauseSeconds", cfg.throttle.maxPauseSeconds);
+
+            // quietWindow
+            Map<String, Object> quiet = asMap(map, "quietWindow");
+            cfg.quietWindow.enabled = asBool(quiet, "enabled", cfg.quietWindow.enabled);
+            cfg.quietWindow.maxPlayers = asInt(quiet, "maxPlayers", cfg.quietWindow.maxPlayers);
+            if (quiet.containsKey("timeRanges")) cfg.quietWindow.timeRanges = asStrList(quiet.get("timeRanges"));
+            cfg.quietWindow.recheckMinutes = asInt(quiet, "recheckMinutes", cfg.quietWindow.recheckMinutes);
+
+            // download
+            Map<String, Object> download = asMap(map, "download");
+            cfg.download.baseUrl = asStr(download, "baseUrl", cfg.download.baseUrl);
+            cfg.download.segments = asInt(download, "segments", cfg.download.segments);
+            cfg.download.stallSeconds = asInt(download, "stallSeconds", cfg.download.stallSeconds);
+            cfg.download.stallBytes = asInt(download, "stallBytes", cfg.download.stallBytes);
+            cfg.download.progressSeconds = asInt(download, "progressSeconds", cfg.download.progressSeconds);
+
+            // circuitBreaker
+            Map<String, Object> breaker = asMap(map, "circuitBreaker");
+            cfg.circuitBreaker.failureThreshold = asInt(breaker, "failureThreshold", cfg.circuitBreaker.failureThreshold);
+            cfg.circuitBreaker.coolDownSeconds = asInt(breaker, "coolDownSeconds", cfg.circuitBreaker.coolDownSeconds);
+
+            // metrics
+            Map<String, Object> metrics = asMap(map, "metrics");
+            cfg.metrics.enabled = asBool(metrics, "enabled", cfg.metrics.enabled);
+            cfg.metrics.host = asStr(metrics, "host", cfg.metrics.host);
+            cfg.metrics.port = asInt(metrics, "port", cfg.metrics.port);
+
+            // webhook
+            Map<String, Object> webhook = asMap(map, "webhook");
+            cfg.webhook.enabled = asBool(webhook, "enabled", cfg.webhook.enabled);
+            cfg.webhook.host = asStr(webhook, "host", cfg.webhook.host);
+            cfg.webhook.port = asInt(webhook, "port", cfg.webhook.port);
+            cfg.webhook.path = asStr(webhook, "path", cfg.webhook.path);
+            cfg.webhook.secret = asStr(webhook, "secret", cfg.webhook.secret);
+
+            // staging
+            Map<String, Object> staging = asMap(map, "staging");
+            cfg.staging.fsync = asStr(staging, "fsync", cfg.staging.fsync);
+
             // adminLogin
             Map<String, Object> adminLogin = asMap(map, "adminLogin");
             cfg.adminLogin.enabled = asBool(adminLogin, "enabled", cfg.adminLogin.enabled);
             cfg.adminLogin.permission = asStr(adminLogin, "permission", cfg.adminLogin.permission);
 
             // targets
-            Map<String, Object> targets = asMap(map, "targets");
-            cfg.targets.geyser = asBool(targets, "geyser", cfg.targets.geyser);
-            cfg.targets.floodgate = asBool(targets, "floodgate", cfg.targets.floodgate);
+            cfg.targets = loadTargets(asMap(map, "targets"), cfg.targets);
 
             // postUpdate
             Map<String, Object> postUpdate = asMap(map, "postUpdate");
@@ -82,8 +154,24 @@ public class ConfigManager {
             cfg.postUpdate.runRestartCommand = asBool(postUpdate, "runRestartCommand", cfg.postUpdate.runRestartCommand);
             cfg.postUpdate.restartCommand = asStr(postUpdate, "restartCommand", cfg.postUpdate.restartCommand);
 
+            // restartCoordinator
+            Map<String, Object> coordinator = asMap(map, "restartCoordinator");
+            cfg.restartCoordinator.enabled = asBool(coordinator, "enabled", cfg.restartCoordinator.enabled);
+            cfg.restartCoordinator.host = asStr(coordinator, "host", cfg.restartCoordinator.host);
+            cfg.restartCoordinator.port = asInt(coordinator, "port", cfg.restartCoordinator.port);
+            cfg.restartCoordinator.serverName = asStr(coordinator, "serverName", cfg.restartCoordinator.serverName);
+            cfg.restartCoordinator.maxConcurrent = asInt(coordinator, "maxConcurrent", cfg.restartCoordinator.maxConcurrent);
+            cfg.restartCoordinator.returnTimeoutMinutes = asInt(coordinator, "returnTimeoutMinutes", cfg.restartCoordinator.returnTimeoutMinutes);
+            cfg.restartCoordinator.secret = asStr(coordinator, "secret", cfg.restartCoordinator.secret);
+
             // Load messages from language file
-            loadMessages(cfg);
+            loadMessages(cfg, writable);
+
+            // Checked after the messages so the warning is in the configured language
+            if (FsyncPolicy.parse(cfg.staging.fsync).isEmpty()) {
+                log.warn(cfg.messages.invalidFsync.replace("{value}", String.valueOf(cfg.staging.fsync)));
+                cfg.staging.fsync = new Config.Staging().fsync;
+            }
 
             return cfg;
         } catch (IOException e) {
@@ -92,6 +180,82 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Each entry under {@code targets} is either a boolean toggling a built-in target, or a map
+     * overriding a built-in or defining a new one. Built-ins not mentioned keep their defaults.
+     */
+    private static TargetRegistry loadTargets(Map<String, Object> section, TargetRegistry defaults) {
+        Map<String, Project> result = new LinkedHashMap<>();
+        for (Project p : defaults.all()) {
+            result.put(p.id(), p);
+        }
+        for (Map.Entry<String, Object> e : section.entrySet()) {
+            String id = e.getKey();
+            Project base = result.get(id);
+            if (!(e.getValue() instanceof Map<?, ?>)) {
+                if (base != null) {
+                    boolean enabled = asBool(section, id, base.enabled());
+                    result.put(id, new Project(id, enabled, base.apiName(), base.downloads(), base.fileNames(),
+                            base.destination(), base.matchRules(), base.excludeRules()));
+                }
+                continue;
+            }
+            Map<String, Object> def = asMap(section, id);
+            String apiName = asStr(def, "project", base != null ? base.apiName() : id);
+            Map<Platform, String> downloads = def.containsKey("downloads")
+                    ? asPlatformMap(def.get("downloads"))
+                    : base != null ? base.downloads() : asPlatformMap(null);
+            Map<Platform, String> fileNames = def.containsKey("fileName")
+                    ? asPlatformMap(def.get("fileName"))
+                    : base != null ? base.fileNames() : Collections.emptyMap();
+            result.put(id, new Project(id,
+                    asBool(def, "enabled", base == null || base.enabled()),
+                    apiName,
+                    downloads,
+                    fileNames,
+                    asStr(def, "destination", base != null ? base.destination() : ""),
+                    def.containsKey("match") ? asStrList(def.get("match")) : base != null ? base.matchRules() : List.of(id.toLowerCase()),
+                    def.containsKey("exclude") ? asStrList(def.get("exclude")) : base != null ? base.excludeRules() : List.of()));
+        }
+        return new TargetRegistry(new ArrayList<>(result.values()));
+    }
+
+    // A single string applies to every platform; a map is keyed by platform name
+    private static Map<Platform, String> asPlatformMap(Object o) {
+        Map<Platform, String> out = new EnumMap<>(Platform.class);
+        if (o instanceof Map<?, ?> m) {
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                try {
+                    out.put(Platform.fromString(String.valueOf(e.getKey())), String.valueOf(e.getValue()));
+                } catch (IllegalArgumentException ignored) {
+                    // unknown platform key; skip it
+                }
+            }
+        } else {
+            for (Platform p : Platform.values()) {
+                out.put(p, o == null ? p.apiName() : String.valueOf(o));
+            }
+        }
+        return out;
+    }
+
+    private static List<String> asStrList(Object o) {
+        List<String> out = new ArrayList<>();
+        if (o instanceof List<?> list) {
+            for (Object item : list) out.add(String.valueOf(item).toLowerCase());
+        } else if (o != null) {
+            out.add(String.valueOf(o).toLowerCase());
+        }
+        return out;
+    }
+
+    private Yaml yaml() {
+        if (yaml == null) {
+            yaml = new Yaml(new SafeConstructor(new LoaderOptions()));
+        }
+        return yaml;
+    }
+
     private static Map<String, Object> asMap(Map<?, ?> map, String key) {
         Object o = map.get(key);
         if (o instanceof Map<?, ?> m) {
@@ -120,25 +284,41 @@ public class ConfigManager {
         try { return Integer.parseInt(String.valueOf(o)); } catch (Exception e) { return def; }
     }
 
+    private static double asDouble(Map<?, ?> map, String key, double def) {
+        Object o = map.get(key);
+        if (o instanceof Number n) return n.doubleValue();
+        if (o == null) return def;
+        try { return Double.parseDouble(String.valueOf(o)); } catch (Exception e) { return def; }
+    }
+
     public Path getConfigPath() {
         return configPath;
     }
 
-    private void loadMessages(Config cfg) {
+    private void loadMessages(Config cfg, boolean writable) {
         try {
-            // Create messages folder if it doesn't exist
-            if (!Files.exists(messagesFolder)) {
-                Files.createDirectories(messagesFolder);
-                // Copy all default language files from resources
-                copyDefaultLanguageFiles();
-            }
-
             String languageFile = "messages_" + cfg.language + ".yml";
             Path externalFile = messagesFolder.resolve(languageFile);
 
-            // If the specific language file doesn't exist externally, try to copy it from resources
-            if (!Files.exists(externalFile)) {
-                copyLanguageFileFromResources(languageFile);
+            if (writable) {
+                // Create messages folder if it doesn't exist
+                if (!Files.exists(messagesFolder)) {
+                    Files.createDirectories(messagesFolder);
+                    // Copy all default language files from resources
+                    copyDefaultLanguageFiles();
+                }
+
+                // If the specific language file doesn't exist externally, try to copy it from resources
+                if (!Files.exists(externalFile)) {
+                    copyLanguageFileFromResources(languageFile);
+                }
+            } else if (!Files.exists(externalFile)) {
+                try (InputStream bundled = ConfigManager.class.getClassLoader().getResourceAsStream(languageFile)) {
+                    if (bundled != null) {
+                        loadMessagesFromStream(bundled, cfg);
+                        return;
+                    }
+                }
             }
 
             // Load from external file if it exists
@@ -184,10 +364,7 @@ public class ConfigManager {
     }
 
     private void loadMessagesFromString(String content, Config cfg) {
-        LoaderOptions options = new LoaderOptions();
-        Yaml yaml = new Yaml(new SafeConstructor(options));
-
-        Object obj = yaml.load(content);
+        Object obj = yaml().load(content);
         if (!(obj instanceof Map<?, ?> map)) {
             return;
         }
@@ -209,6 +386,8 @@ public class ConfigManager {
         cfg.messages.failed = asStr(map, "failed", cfg.messages.failed);
         cfg.messages.promptRestart = asStr(map, "promptRestart", cfg.messages.promptRestart);
         cfg.messages.startUpCheck = asStr(map, "startUpCheck", cfg.messages.startUpCheck);
+        cfg.messages.startUpCheckSkipped = asStr(map, "startUpCheckSkipped", cfg.messages.startUpCheckSkipped);
+        cfg.messages.startUpCheckDeferred = asStr(map, "startUpCheckDeferred", cfg.messages.startUpCheckDeferred);
         cfg.messages.periodicCheck = asStr(map, "periodicCheck", cfg.messages.periodicCheck);
         cfg.messages.adminLoginCheck = asStr(map, "adminLoginCheck", cfg.messages.adminLoginCheck);
         cfg.messages.manualTriggered = asStr(map, "manualTriggered", cfg.messages.manualTriggered);
@@ -223,5 +402,32 @@ public class ConfigManager {
         cfg.messages.dataDirectoryError = asStr(map, "dataDirectoryError", cfg.messages.dataDirectoryError);
         cfg.messages.reloadSuccess = asStr(map, "reloadSuccess", cfg.messages.reloadSuccess);
         cfg.messages.reloadFailed = asStr(map, "reloadFailed", cfg.messages.reloadFailed);
+        cfg.messages.destinationNotFound = asStr(map, "destinationNotFound", cfg.messages.destinationNotFound);
+        cfg.messages.checksumMismatch = asStr(map, "checksumMismatch", cfg.messages.checksumMismatch);
+        cfg.messages.invalidJar = asStr(map, "invalidJar", cfg.messages.invalidJar);
+        cfg.messages.stagingCleanupFailed = asStr(map, "stagingCleanupFailed", cfg.messages.stagingCleanupFailed);
+        cfg.messages.invalidFsync = asStr(map, "invalidFsync", cfg.messages.invalidFsync);
+        cfg.messages.updatePending = asStr(map, "updatePending", cfg.messages.updatePending);
+        cfg.messages.webhookStarted = asStr(map, "webhookStarted", cfg.messages.webhookStarted);
+        cfg.messages.webhookFailed = asStr(map, "webhookFailed", cfg.messages.webhookFailed);
+        cfg.messages.webhookNoSecret = asStr(map, "webhookNoSecret", cfg.messages.webhookNoSecret);
+        cfg.messages.downloadProgress = asStr(map, "downloadProgress", cfg.messages.downloadProgress);
+        cfg.messages.webhookTriggered = asStr(map, "webhookTriggered", cfg.messages.webhookTriggered);
+        cfg.messages.webhookTriggerFailed = asStr(map, "webhookTriggerFailed", cfg.messages.webhookTriggerFailed);
+        cfg.messages.metricsStarted = asStr(map, "metricsStarted", cfg.messages.metricsStarted);
+        cfg.messages.metricsFailed = asStr(map, "metricsFailed", cfg.messages.metricsFailed);
+        cfg.messages.checkSummary = asStr(map, "checkSummary", cfg.messages.checkSummary);
+        cfg.messages.circuitOpen = asStr(map, "circuitOpen", cfg.messages.circuitOpen);
+        cfg.messages.metadataFailed = asStr(map, "metadataFailed", cfg.messages.metadataFailed);
+        cfg.messages.restartQueued = asStr(map, "restartQueued", cfg.messages.restartQueued);
+        cfg.messages.restartGranted = asStr(map, "restartGranted", cfg.messages.restartGranted);
+        cfg.messages.coordinatorUnreachable = asStr(map, "coordinatorUnreachable", cfg.messages.coordinatorUnreachable);
+        cfg.messages.coordinatorStarted = asStr(map, "coordinatorStarted", cfg.messages.coordinatorStarted);
+        cfg.messages.coordinatorFailed = asStr(map, "coordinatorFailed", cfg.messages.coordinatorFailed);
+        cfg.messages.coordinatorGranted = asStr(map, "coordinatorGranted", cfg.messages.coordinatorGranted);
+        cfg.messages.coordinatorReleased = asStr(map, "coordinatorReleased", cfg.messages.coordinatorReleased);
+        cfg.messages.coordinatorTimeout = asStr(map, "coordinatorTimeout", cfg.messages.coordinatorTimeout);
+        cfg.messages.coordinatorNoSecret = asStr(map, "coordinatorNoSecret", cfg.messages.coordinatorNoSecret);
+        cfg.messages.coordinatorUnauthorized = asStr(map, "coordinatorUnauthorized", cfg.messages.coordinatorUnauthorized);
     }
 }
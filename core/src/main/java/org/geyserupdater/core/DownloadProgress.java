@@ -0,0 +1,39 @@
+package org.geyserupdater.core;
+
+import java.util.Locale;
+
+/** A snapshot of a download in flight, for the progress lines of a manual check. */
+public final class DownloadProgress {
+    public final Project project;
+    public final long bytes;
+    /** -1 while the length is unknown. */
+    public final long total;
+    public final double bytesPerSecond;
+
+    public DownloadProgress(Project project, long bytes, long total, double bytesPerSecond) {
+        this.project = project;
+        this.bytes = bytes;
+        this.total = total;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /** Seconds until done at the average speed so far, or -1 when that cannot be told. */
+    public long etaSeconds() {
+        if (total <= 0 || bytesPerSecond <= 0) return -1;
+        return (long) Math.ceil(Math.max(0, total - bytes) / bytesPerSecond);
+    }
+
+    public String format(Config.Messages m) {
+        long eta = etaSeconds();
+        return m.downloadProgress
+                .replace("{project}", project.id())
+                .replace("{percent}", total > 0 ? String.valueOf(Math.min(100, bytes * 100 / total)) : "?")
+                .replace("{speed}", size(bytesPerSecond) + "/s")
+                .replace("{eta}", eta < 0 ? "?" : eta >= 60 ? eta / 60 + "m " + String.format(Locale.ROOT, "%02d", eta % 60) + "s" : eta + "s");
+    }
+
+    private static String size(double bytes) {
+        if (bytes >= 1 << 20) return String.format(Locale.ROOT, "%.1f MiB", bytes / (1 << 20));
+        return String.format(Locale.ROOT, "%.0f KiB", bytes / 1024);
+    }
+}
@@ -14,4 +14,12 @@ public enum Platform {
     public String apiName() {
         return apiName;
     }
+
+    /** Accepts the API name ({@code bungeecord}) as well as the constant name ({@code BUNGEECORD}). */
+    public static Platform fromString(String value) {
+        for (Platform p : values()) {
+            if (p.apiName.equalsIgnoreCase(value) || p.name().equalsIgnoreCase(value)) return p;
+        }
+        throw new IllegalArgumentException("Unknown platform: " + value);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package org.geyserupdater.core;
+
+/** Receives periodic {@link DownloadProgress} while a check downloads. Called off the check's thread. */
+@FunctionalInterface
+public interface ProgressListener {
+    ProgressListener NONE = progress -> {};
+
+    void onProgress(DownloadProgress progress);
+}
@@ -1,18 +1,81 @@
 package org.geyserupdater.core;
 
-public enum Project {
-    GEYSER("geyser", "geyser"),
-    FLOODGATE("floodgate", "floodgate");
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 
+/**
+ * One update target: a project on the download API plus where its jar lives and how to recognise it.
+ * Instances come from {@link TargetRegistry}.
+ */
+public final class Project {
+    private final String id;
+    private final boolean enabled;
     private final String apiName;
-    private final String fileHint;
+    private final Map<Platform, String> downloads;
+    private final Map<Platform, String> fileNames;
+    private final String destination;
+    private final List<String> matches;
+    private final List<String> excludes;
 
-    Project(String apiName, String fileHint) {
+    public Project(String id, boolean enabled, String apiName, Map<Platform, String> downloads,
+                   Map<Platform, String> fileNames, String destination, List<String> matches, List<String> excludes) {
+        this.id = id;
+        this.enabled = enabled;
         this.apiName = apiName;
-        this.fileHint = fileHint;
+        this.downloads = copy(downloads);
+        this.fileNames = copy(fileNames);
+        this.destination = destination;
+        this.matches = List.copyOf(matches);
+        this.excludes = List.copyOf(excludes);
     }
 
+    private static Map<Platform, String> copy(Map<Platform, String> map) {
+        Map<Platform, String> copy = new EnumMap<>(Platform.class);
+        copy.putAll(map);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /** Key of the target in config.yml, also used in messages. */
+    public String id() { return id; }
+
+    public boolean enabled() { return enabled; }
+
+    /** Project id on the download API. */
     public String apiName() { return apiName; }
 
-    public String fileHint() { return fileHint; }
-}
\ No newline at end of file
+    /** Download key for the platform, empty if the project has no build for it. */
+    public Optional<String> downloadKey(Platform platform) { return Optional.ofNullable(downloads.get(platform)); }
+
+    public Map<Platform, String> downloads() { return downloads; }
+
+    public Map<Platform, String> fileNames() { return fileNames; }
+
+    /** File name used when no existing jar is found. */
+    public String fileName(Platform platform) {
+        return fileNames.getOrDefault(platform, apiName + ".jar");
+    }
+
+    /** Folder relative to the plugins directory; may contain glob segments such as {@code Geyser-*}. */
+    public String destination() { return destination; }
+
+    public List<String> matchRules() { return matches; }
+
+    public List<String> excludeRules() { return excludes; }
+
+    /** Whether an existing jar with this file name belongs to the project. */
+    public boolean matches(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (!name.endsWith(".jar")) return false;
+        for (String exclude : excludes) {
+            if (name.contains(exclude)) return false;
+        }
+        for (String match : matches) {
+            if (name.contains(match)) return true;
+        }
+        return false;
+    }
+}
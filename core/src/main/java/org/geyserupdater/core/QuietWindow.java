@@ -0,0 +1,39 @@
+package org.geyserupdater.core;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Decides whether the heavy stages of a scheduled check (download, hash, swap) may run now.
+ * The server is quiet when fewer than {@code maxPlayers} are online, or the local time is inside
+ * one of {@code timeRanges} ("HH:mm-HH:mm", may wrap past midnight).
+ */
+public final class QuietWindow {
+    private QuietWindow() {}
+
+    public static boolean isQuiet(Config.QuietWindow c, int onlinePlayers, LocalTime now) {
+        if (!c.enabled) return true;
+        if (c.maxPlayers >= 0 && onlinePlayers >= 0 && onlinePlayers < c.maxPlayers) return true;
+        for (String range : c.timeRanges) {
+            if (inRange(range, now)) return true;
+        }
+        return false;
+    }
+
+    // Malformed ranges never match
+    static boolean inRange(String range, LocalTime now) {
+        int dash = range.indexOf('-');
+        if (dash < 0) return false;
+        try {
+            LocalTime from = LocalTime.parse(range.substring(0, dash).trim());
+            LocalTime to = LocalTime.parse(range.substring(dash + 1).trim());
+            if (from.isBefore(to)) {
+                return !now.isBefore(from) && now.isBefore(to);
+            }
+            // Wraps past midnight, e.g. 23:00-05:00
+            return !now.isBefore(from) || now.isBefore(to);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
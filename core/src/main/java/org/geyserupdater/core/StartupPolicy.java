@@ -0,0 +1,31 @@
+package org.geyserupdater.core;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Decides what to do with the startup check: skip it when a recent check already
+ * succeeded, otherwise run it once the server has finished loading.
+ */
+public final class StartupPolicy {
+    private StartupPolicy() {}
+
+    public enum Decision {
+        SKIP,
+        DEFER,
+        RUN_NOW
+    }
+
+    public static Decision decide(Config cfg, CheckHistory history, Instant now) {
+        int ttl = cfg.startup.skipIfCheckedWithinMinutes;
+        if (ttl > 0) {
+            Optional<Instant> last = history.lastSuccess();
+            if (last.isPresent() && !last.get().isAfter(now)
+                    && Duration.between(last.get(), now).compareTo(Duration.ofMinutes(ttl)) < 0) {
+                return Decision.SKIP;
+            }
+        }
+        return cfg.startup.deferUntilLoaded ? Decision.DEFER : Decision.RUN_NOW;
+    }
+}
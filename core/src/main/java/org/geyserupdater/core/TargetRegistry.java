@@ -0,0 +1,62 @@
+package org.geyserupdater.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The set of update targets, in config order. Starts from the built-in Geyser and Floodgate
+ * definitions; config.yml can toggle, override or add entries (see {@link ConfigManager}).
+ */
+public final class TargetRegistry {
+    private final Map<String, Project> projects;
+
+    public TargetRegistry(List<Project> projects) {
+        Map<String, Project> byId = new LinkedHashMap<>();
+        for (Project p : projects) {
+            byId.put(p.id(), p);
+        }
+        this.projects = Collections.unmodifiableMap(byId);
+    }
+
+    public static TargetRegistry defaults() {
+        List<Project> list = new ArrayList<>();
+        list.add(new Project("geyser", true, "geyser",
+                byPlatform("spigot", "bungeecord", "velocity"),
+                byPlatform("Geyser-Spigot.jar", "Geyser-BungeeCord.jar", "Geyser-Velocity.jar"),
+                "", List.of("geyser"), List.of("geyserupdater")));
+        list.add(new Project("floodgate", true, "floodgate",
+                byPlatform("spigot", "bungeecord", "velocity"),
+                byPlatform("floodgate-spigot.jar", "floodgate-bungee.jar", "floodgate-velocity.jar"),
+                "", List.of("floodgate"), List.of()));
+        return new TargetRegistry(list);
+    }
+
+    public Project get(String id) {
+        return projects.get(id);
+    }
+
+    public List<Project> all() {
+        return new ArrayList<>(projects.values());
+    }
+
+    /** Enabled targets that publish a build for the platform. */
+    public List<Project> enabledFor(Platform platform) {
+        List<Project> result = new ArrayList<>();
+        for (Project p : projects.values()) {
+            if (p.enabled() && p.downloadKey(platform).isPresent()) result.add(p);
+        }
+        return result;
+    }
+
+    private static Map<Platform, String> byPlatform(String spigot, String bungee, String velocity) {
+        Map<Platform, String> map = new EnumMap<>(Platform.class);
+        map.put(Platform.SPIGOT, spigot);
+        map.put(Platform.BUNGEECORD, bungee);
+        map.put(Platform.VELOCITY, velocity);
+        return map;
+    }
+}
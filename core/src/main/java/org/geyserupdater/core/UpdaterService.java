@@ -1,7 +1,16 @@
 package org.geyserupdater.core;
 
+import org.geyserupdater.core.load.LoadSignal;
+import org.geyserupdater.core.load.LoadThrottle;
 import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.metrics.UpdateMetrics;
 import org.geyserupdater.core.util.FileUtils;
+import org.geyserupdater.core.util.FsyncPolicy;
+import org.geyserupdater.core.util.Json;
+import org.geyserupdater.core.util.PositionalBodySubscriber;
+import org.geyserupdater.core.util.ThroughputHistory;
+import org.geyserupdater.core.util.TransferWatchdog;
+import org.geyserupdater.core.util.ZipStreamValidator;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -9,128 +18,846 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
 
-public class UpdaterService {
-    private static final String BASE = "https://download.geysermc.org/v2/projects";
-    private final HttpClient http;
+public class UpdaterService implements AutoCloseable {
+    private static final Duration METADATA_TIMEOUT = Duration.ofSeconds(15);
+    // Hidden folder below plugins/, so staged files share a filesystem with the jars they replace
+    static final String STAGING_DIR = ".geyserupdater-staging";
+    private static final String STAGING_SUFFIX = ".jar.part";
+    // Smaller ranges cost more in round trips than they gain in parallelism
+    private static final long MIN_SEGMENT_BYTES = 512 * 1024;
+    private static final int RANGE_ATTEMPTS = 3;
+    // Only bounds the wait for response headers; bodies are watched for progress instead
+    private static final Duration HEADERS_TIMEOUT = Duration.ofSeconds(30);
+    // A download may take this many times as long as the host's usual speed suggests, but never less than the minimum
+    private static final double DEADLINE_FACTOR = 4;
+    private static final Duration MIN_DEADLINE = Duration.ofSeconds(60);
+    // Until a host has history: a pace slow enough for any working link, so only a dead trickle runs out of time
+    private static final long FALLBACK_BYTES_PER_SECOND = 32 * 1024;
+    private static final Duration UNKNOWN_LENGTH_DEADLINE = Duration.ofMinutes(30);
     private final LogAdapter log;
-    private final Config cfg;
+    private volatile Config cfg;
+    private volatile LoadSignal loadSignal = LoadSignal.NONE;
+    private final CircuitBreaker breaker = new CircuitBreaker(() -> cfg.circuitBreaker);
+    private final UpdateMetrics metrics = new UpdateMetrics();
+    // Hashes of installed jars, so repeated metadata-only checks do not re-read unchanged files
+    private final Map<Path, InstalledHash> installedHashes = new ConcurrentHashMap<>();
+    private final ThroughputHistory throughput = new ThroughputHistory();
+    // The check running for each plugins folder, which checks of the same folder started meanwhile share
+    private final Map<Path, SharedCheck> running = new ConcurrentHashMap<>();
+    // Built on first use so that constructing the service on the enable thread stays cheap
+    private volatile HttpClient http;
+    // Owned here rather than by the client, whose default pool cannot be shut down
+    private volatile ExecutorService httpExecutor;
+    private volatile ScheduledExecutorService watchdogTimer;
 
     public UpdaterService(LogAdapter log, Config cfg) {
         this.log = log;
         this.cfg = cfg;
-        this.http = HttpClient.newBuilder()
-                .followRedirects(HttpClient.Redirect.ALWAYS)
-                .connectTimeout(Duration.ofSeconds(15))
-                .build();
+    }
+
+    public void setConfig(Config cfg) {
+        this.cfg = cfg;
+    }
+
+    public void setLoadSignal(LoadSignal loadSignal) {
+        this.loadSignal = loadSignal;
+    }
+
+    private HttpClient http() {
+        HttpClient client = http;
+        if (client == null) {
+            synchronized (this) {
+                client = http;
+                if (client == null) {
+                    httpExecutor = Executors.newCachedThreadPool(r -> {
+                        Thread t = new Thread(r, "GeyserUpdater-Http");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    client = HttpClient.newBuilder()
+                            .followRedirects(HttpClient.Redirect.ALWAYS)
+                            .connectTimeout(Duration.ofSeconds(15))
+                            .executor(httpExecutor)
+                            .build();
+                    http = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private ScheduledExecutorService watchdogTimer() {
+        ScheduledExecutorService timer = watchdogTimer;
+        if (timer == null) {
+            synchronized (this) {
+                timer = watchdogTimer;
+                if (timer == null) {
+                    ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, r -> {
+                        Thread t = new Thread(r, "GeyserUpdater-Watchdog");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    // Only needed while something downloads
+                    pool.setKeepAliveTime(30, TimeUnit.SECONDS);
+                    pool.allowCoreThreadTimeOut(true);
+                    pool.setRemoveOnCancelPolicy(true);
+                    timer = pool;
+                    watchdogTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Stops the HTTP and watchdog threads; downloads still running fail. A later check starts them
+     * again, so this is safe to call while a check may still be scheduled.
+     */
+    @Override
+    public synchronized void close() {
+        if (httpExecutor != null) httpExecutor.shutdownNow();
+        if (watchdogTimer != null) watchdogTimer.shutdownNow();
+        // The client's selector thread ends once the client is unreachable
+        http = null;
+        httpExecutor = null;
+        watchdogTimer = null;
     }
 
     public static class UpdateOutcome {
         public final Project project;
         public final boolean updated;
         public final boolean skippedNoChange;
+        /** A newer build exists (or may exist), but the heavy stages were deferred. */
+        public final boolean pending;
         public final Optional<String> error;
 
         public UpdateOutcome(Project project, boolean updated, boolean skippedNoChange, Optional<String> error) {
+            this(project, updated, skippedNoChange, false, error);
+        }
+
+        public UpdateOutcome(Project project, boolean updated, boolean skippedNoChange, boolean pending, Optional<String> error) {
             this.project = project;
             this.updated = updated;
             this.skippedNoChange = skippedNoChange;
+            this.pending = pending;
             this.error = error;
         }
     }
 
     public List<UpdateOutcome> checkAndUpdate(Platform platform, Path pluginsDir) {
-        List<Project> targets = collectTargets();
+        return checkAndUpdate(platform, pluginsDir, false);
+    }
+
+    /**
+     * With {@code deferHeavy} only build metadata is fetched and compared with the installed jars;
+     * targets that would need a download come back as {@link UpdateOutcome#pending}.
+     */
+    public List<UpdateOutcome> checkAndUpdate(Platform platform, Path pluginsDir, boolean deferHeavy) {
+        return checkAndUpdate(platform, pluginsDir, deferHeavy, ProgressListener.NONE);
+    }
+
+    /**
+     * As above, reporting download progress every {@code download.progressSeconds} to {@code progress}.
+     * A check of a folder that is already being checked waits for that check and returns its
+     * outcomes (progress goes to whoever started it) if that check has not fetched build info yet
+     * and downloads whenever this one would. Otherwise it runs on its own once the other has finished.
+     */
+    public List<UpdateOutcome> checkAndUpdate(Platform platform, Path pluginsDir, boolean deferHeavy, ProgressListener progress) {
+        Path key = pluginsDir.toAbsolutePath().normalize();
+        while (true) {
+            SharedCheck mine = new SharedCheck(deferHeavy);
+            SharedCheck other = running.putIfAbsent(key, mine);
+            if (other == null) {
+                try {
+                    List<UpdateOutcome> results = Collections.unmodifiableList(runCheck(platform, pluginsDir, deferHeavy, progress, mine));
+                    running.remove(key, mine);
+                    mine.result.complete(results);
+                    return results;
+                } catch (RuntimeException | Error e) {
+                    running.remove(key, mine);
+                    mine.result.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            // Decided now: once it has build info it may miss a build published since we were asked
+            boolean share = !other.fetched && (deferHeavy || !other.deferHeavy);
+            try {
+                List<UpdateOutcome> shared = other.result.join();
+                if (share) return shared;
+            } catch (CompletionException e) {
+                // Its failure was reported to its own caller; run our own
+            }
+        }
+    }
+
+    private List<UpdateOutcome> runCheck(Platform platform, Path pluginsDir, boolean deferHeavy, ProgressListener progress,
+                                         SharedCheck shared) {
+        List<Project> targets = cfg.targets.enabledFor(platform);
         if (targets.isEmpty()) {
-            return Collections.singletonList(new UpdateOutcome(Project.GEYSER, false, false,
-                    Optional.of("No targets enabled")));
+            return Collections.emptyList();
         }
         List<UpdateOutcome> results = new ArrayList<>();
-        for (Project p : targets) {
-            results.add(updateOne(p, platform, pluginsDir));
+        metrics.checkStarted();
+        try {
+            // While the API is known to be down, answer from the cached failure instead of waiting out timeouts
+            if (!breaker.tryAcquire()) {
+                results.addAll(circuitOpen(targets));
+                return results;
+            }
+            CircuitBreaker.Round round = breaker.round();
+            try {
+                Map<String, BuildInfo> builds = fetchBuilds(targets, round);
+                shared.fetched = true;
+                for (Project p : targets) {
+                    if (breaker.isOpen()) {
+                        results.addAll(circuitOpen(List.of(p)));
+                        continue;
+                    }
+                    results.add(updateOne(p, builds.get(p.apiName()), platform, pluginsDir, deferHeavy, progress, round));
+                }
+                return results;
+            } finally {
+                round.finish();
+                breaker.release();
+            }
+        } finally {
+            metrics.checkFinished(results);
         }
-        return results;
     }
 
-    private List<Project> collectTargets() {
-        List<Project> targets = new ArrayList<>();
-        if (cfg.targets.geyser) targets.add(Project.GEYSER);
-        if (cfg.targets.floodgate) targets.add(Project.FLOODGATE);
-        return targets;
+    public UpdateMetrics metrics() {
+        return metrics;
     }
 
-    private UpdateOutcome updateOne(Project project, Platform platform, Path pluginsDir) {
+    public CircuitBreaker.State circuitState() {
+        return breaker.state();
+    }
+
+    private List<UpdateOutcome> circuitOpen(List<Project> targets) {
+        String error = cfg.messages.circuitOpen
+                .replace("{seconds}", String.valueOf(breaker.retryInSeconds()))
+                .replace("{error}", breaker.cachedFailure().orElse(""));
+        List<UpdateOutcome> results = new ArrayList<>();
+        for (Project p : targets) {
+            results.add(new UpdateOutcome(p, false, false, Optional.of(error)));
+        }
+        return results;
+    }
+
+    /**
+     * Looks up the latest build of every distinct project concurrently, so a check costs one
+     * round trip however many targets are configured. Projects whose lookup fails are absent
+     * from the result and fall back to download-and-compare.
+     */
+    public Map<String, BuildInfo> fetchBuilds(List<Project> targets) {
+        CircuitBreaker.Round round = breaker.round();
         try {
-            Path existing = findExistingJar(project, pluginsDir);
-            String downloadUrl = BASE + "/" + project.apiName() + "/versions/latest/builds/latest/downloads/" + platform.apiName();
+            return fetchBuilds(targets, round);
+        } finally {
+            round.finish();
+        }
+    }
 
-            Path tmp = Files.createTempFile("geyserupdater-" + project.apiName(), ".jar");
+    private Map<String, BuildInfo> fetchBuilds(List<Project> targets, CircuitBreaker.Round round) {
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<HttpResponse<String>>> pending = new LinkedHashMap<>();
+        for (Project p : targets) {
+            pending.computeIfAbsent(p.apiName(), name -> {
+                HttpRequest req = HttpRequest.newBuilder(URI.create(base() + "/" + name + "/versions/latest/builds/latest"))
+                        .timeout(METADATA_TIMEOUT)
+                        .header("Accept", "application/json")
+                        .GET()
+                        .build();
+                return http().sendAsync(req, HttpResponse.BodyHandlers.ofString());
+            });
+        }
+        Map<String, BuildInfo> builds = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<HttpResponse<String>>> e : pending.entrySet()) {
             try {
-                downloadTo(downloadUrl, tmp);
-            } catch (IOException e) {
+                HttpResponse<String> resp = e.getValue().get();
+                if (isUpstreamFailure(resp.statusCode())) {
+                    round.onFailure("HTTP " + resp.statusCode());
+                } else {
+                    round.onSuccess();
+                }
+                if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+                    throw new IOException("HTTP " + resp.statusCode());
+                }
+                builds.put(e.getKey(), parseBuild(e.getKey(), resp.body()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (ex instanceof ExecutionException) {
+                    // The request itself failed (connect, reset, timeout)
+                    round.onFailure(describe(cause));
+                }
+                log.warn(cfg.messages.metadataFailed.replace("{project}", e.getKey()).replace("{error}", describe(cause)));
+            }
+        }
+        metrics.observe(UpdateMetrics.Phase.METADATA, System.nanoTime() - start);
+        return builds;
+    }
+
+    private static BuildInfo parseBuild(String project, String json) throws IOException {
+        Object obj = Json.parse(json);
+        if (!(obj instanceof Map<?, ?> map)) throw new IOException("Unexpected build metadata");
+        Map<String, String> sha256 = new HashMap<>();
+        if (map.get("downloads") instanceof Map<?, ?> downloads) {
+            for (Map.Entry<?, ?> d : downloads.entrySet()) {
+                if (d.getValue() instanceof Map<?, ?> info && info.get("sha256") != null) {
+                    sha256.put(String.valueOf(d.getKey()), String.valueOf(info.get("sha256")));
+                }
+            }
+        }
+        Object build = map.get("build");
+        return new BuildInfo(project, String.valueOf(map.get("version")),
+                build instanceof Number n ? n.intValue() : -1, sha256);
+    }
+
+    /** Where a target's jar lives, or will live, inside one plugins folder. */
+    public static final class Placement {
+        public final Path pluginsDir;
+        public final Path folder;
+        /** The installed jar, or null if the target is not installed yet. */
+        public final Path existing;
+        public final Path destination;
+
+        Placement(Path pluginsDir, Path folder, Path existing, Path destination) {
+            this.pluginsDir = pluginsDir;
+            this.folder = folder;
+            this.existing = existing;
+            this.destination = destination;
+        }
+    }
+
+    private UpdateOutcome updateOne(Project project, BuildInfo build, Platform platform, Path pluginsDir, boolean deferHeavy,
+                                    ProgressListener progress, CircuitBreaker.Round round) {
+        try {
+            String key = project.downloadKey(platform).orElseThrow();
+            Placement placement = locate(project, platform, pluginsDir);
+            if (placement == null) {
                 return new UpdateOutcome(project, false, false,
-                    Optional.of(cfg.messages.downloadFailed.replace("{error}", e.getMessage())));
+                    Optional.of(cfg.messages.destinationNotFound.replace("{destination}", project.destination())));
+            }
+            if (isCurrent(placement, build, key)) {
+                metrics.installed(project.id(), build);
+                return new UpdateOutcome(project, false, true, Optional.empty());
+            }
+            if (deferHeavy) {
+                // Without a published checksum only a download can tell, so that is pending too
+                return new UpdateOutcome(project, false, false, true, Optional.empty());
             }
 
-            // If existing file exists, compare hashes
-            if (existing != null && Files.exists(existing)) {
+            // Stage on the same filesystem as plugins/ so the final move can be an atomic rename
+            Path tmp = newStagingFile(pluginsDir, project);
+            try {
                 try {
-                    String newSha = FileUtils.sha256(tmp);
-                    String oldSha = FileUtils.sha256(existing);
-                    if (newSha.equalsIgnoreCase(oldSha)) {
-                        Files.deleteIfExists(tmp);
-                        return new UpdateOutcome(project, false, true, Optional.empty());
-                    }
+                    download(project, build, key, tmp, progress, round);
+                } catch (ZipException e) {
+                    return new UpdateOutcome(project, false, false,
+                        Optional.of(cfg.messages.invalidJar.replace("{error}", describe(e))));
                 } catch (IOException e) {
-                    // proceed to overwrite if cannot hash
-                    log.warn(cfg.messages.hashComparisonFailed.replace("{error}", e.getMessage()));
+                    return new UpdateOutcome(project, false, false,
+                        Optional.of(cfg.messages.downloadFailed.replace("{error}", describe(e))));
                 }
+                if (!matchesPublished(tmp, build, key)) {
+                    return new UpdateOutcome(project, false, false, Optional.of(cfg.messages.checksumMismatch));
+                }
+                boolean verified = build != null && build.sha256(key).isPresent();
+                UpdateOutcome outcome = install(project, placement, tmp, verified);
+                // Without a checksum we cannot tell which build an identical jar is
+                if (outcome.updated || verified) metrics.installed(project.id(), build);
+                return outcome;
+            } finally {
+                Files.deleteIfExists(tmp);
             }
+        } catch (Exception ex) {
+            return new UpdateOutcome(project, false, false, Optional.of(describe(ex)));
+        }
+    }
 
-            // Determine destination
-            Path dest = (existing != null) ? existing : defaultDestination(project, platform, pluginsDir);
-            // Move atomically
-            FileUtils.atomicMove(tmp, dest);
+    /** Finds the target's folder and installed jar; null if its destination matches no folder. */
+    public Placement locate(Project project, Platform platform, Path pluginsDir) throws IOException {
+        Path folder = resolveDestination(project.destination(), pluginsDir);
+        if (folder == null) return null;
+        Path existing = findExistingJar(project, folder);
+        Path dest = existing != null ? existing : folder.resolve(project.fileName(platform));
+        return new Placement(pluginsDir, folder, existing, dest);
+    }
 
-            return new UpdateOutcome(project, true, false, Optional.empty());
-        } catch (Exception ex) {
-            return new UpdateOutcome(project, false, false, Optional.of(ex.getMessage()));
+    /**
+     * With a published checksum we can tell whether anything changed without downloading.
+     * False when there is nothing to compare against.
+     */
+    public boolean isCurrent(Placement placement, BuildInfo build, String key) {
+        Optional<String> expectedSha = build == null ? Optional.empty() : build.sha256(key);
+        if (placement.existing == null || expectedSha.isEmpty()) return false;
+        long start = System.nanoTime();
+        try {
+            return installedSha(placement.existing).equalsIgnoreCase(expectedSha.get());
+        } catch (IOException e) {
+            log.warn(cfg.messages.hashComparisonFailed.replace("{error}", describe(e)));
+            return false;
+        } finally {
+            metrics.observe(UpdateMetrics.Phase.VERIFY, System.nanoTime() - start);
+        }
+    }
+
+    /** An empty file in the plugins folder's staging area, to download or link a jar into. */
+    public static Path newStagingFile(Path pluginsDir, Project project) throws IOException {
+        Path staging = Files.createDirectories(pluginsDir.resolve(STAGING_DIR));
+        return Files.createTempFile(staging, project.apiName() + "-", STAGING_SUFFIX);
+    }
+
+    /** Downloads the given build (or the latest, without metadata) into {@code target}. */
+    public void download(Project project, BuildInfo build, String key, Path target) throws IOException {
+        download(project, build, key, target, ProgressListener.NONE);
+    }
+
+    public void download(Project project, BuildInfo build, String key, Path target, ProgressListener progress) throws IOException {
+        CircuitBreaker.Round round = breaker.round();
+        try {
+            download(project, build, key, target, progress, round);
+        } finally {
+            round.finish();
+        }
+    }
+
+    private void download(Project project, BuildInfo build, String key, Path target, ProgressListener progress,
+                          CircuitBreaker.Round round) throws IOException {
+        String url = build != null && build.build >= 0
+                ? base() + "/" + project.apiName() + "/versions/" + build.version + "/builds/" + build.build + "/downloads/" + key
+                : base() + "/" + project.apiName() + "/versions/latest/builds/latest/downloads/" + key;
+        long start = System.nanoTime();
+        try (TransferWatchdog watchdog = newWatchdog(project, progress)) {
+            // Ranges are only worth the risk when the assembled file can be checked afterwards
+            boolean verifiable = build != null && build.sha256(key).isPresent();
+            if (cfg.download.segments > 1 && verifiable && downloadSegmented(url, target, cfg.download.segments, watchdog, round)) {
+                return;
+            }
+            // Without a checksum the jar's own structure is all there is to check
+            downloadTo(url, target, watchdog, !verifiable, round);
+        } finally {
+            metrics.observe(UpdateMetrics.Phase.DOWNLOAD, System.nanoTime() - start);
         }
     }
 
-    private void downloadTo(String url, Path target) throws IOException {
+    /** Whether the file matches the published checksum; true when none is published. */
+    public boolean matchesPublished(Path file, BuildInfo build, String key) throws IOException {
+        Optional<String> expectedSha = build == null ? Optional.empty() : build.sha256(key);
+        if (expectedSha.isEmpty()) return true;
+        long start = System.nanoTime();
+        try {
+            return FileUtils.sha256(file, newThrottle()).equalsIgnoreCase(expectedSha.get());
+        } finally {
+            metrics.observe(UpdateMetrics.Phase.VERIFY, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Moves a verified staged jar over the installed one. Without a published checksum the staged
+     * file is first compared with the installed jar, and left alone if identical.
+     */
+    public UpdateOutcome install(Project project, Placement placement, Path staged, boolean verified) throws IOException {
+        if (!verified && placement.existing != null && Files.exists(placement.existing)) {
+            // No published checksum: compare against the installed jar instead
+            try {
+                String newSha = FileUtils.sha256(staged, newThrottle());
+                String oldSha = installedSha(placement.existing);
+                if (newSha.equalsIgnoreCase(oldSha)) {
+                    return new UpdateOutcome(project, false, true, Optional.empty());
+                }
+            } catch (IOException e) {
+                // proceed to overwrite if cannot hash
+                log.warn(cfg.messages.hashComparisonFailed.replace("{error}", describe(e)));
+            }
+        }
+        long start = System.nanoTime();
+        FileUtils.atomicMove(staged, placement.destination, FsyncPolicy.fromString(cfg.staging.fsync));
+        metrics.observe(UpdateMetrics.Phase.INSTALL, System.nanoTime() - start);
+        return new UpdateOutcome(project, true, false, Optional.empty());
+    }
+
+    private void downloadTo(String url, Path target, TransferWatchdog watchdog, boolean validateZip,
+                            CircuitBreaker.Round round) throws IOException {
         HttpRequest req = HttpRequest.newBuilder(URI.create(url))
-                .timeout(Duration.ofSeconds(60))
+                .timeout(HEADERS_TIMEOUT)
                 .GET()
                 .build();
+        HttpResponse<InputStream> resp;
         try {
-            HttpResponse<InputStream> resp = http.send(req, HttpResponse.BodyHandlers.ofInputStream());
-            if (resp.statusCode() >= 200 && resp.statusCode() < 300) {
-                try (InputStream in = resp.body()) {
-                    Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
-                }
+            resp = http().send(req, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (IOException e) {
+            round.onFailure(describe(e));
+            throw e;
+        }
+        if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+            resp.body().close();
+            if (isUpstreamFailure(resp.statusCode())) {
+                round.onFailure("HTTP " + resp.statusCode());
             } else {
-                throw new IOException("HTTP " + resp.statusCode() + " when downloading " + url);
+                round.onSuccess();
+            }
+            throw new IOException("HTTP " + resp.statusCode() + " when downloading " + url);
+        }
+        long expected = resp.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        expect(watchdog, resp.uri(), expected);
+        LoadThrottle throttle = newThrottle();
+        try (InputStream in = resp.body();
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             // Closing the body wakes up a read that is blocked on a stalled connection
+             TransferWatchdog.Channel watch = watchdog.open(reason -> closeQuietly(in));
+             ZipStreamValidator zip = validateZip ? new ZipStreamValidator() : null) {
+            byte[] buf = new byte[65536];
+            long written = 0;
+            int r;
+            while ((r = readBody(in, buf, watch, round)) != -1) {
+                metrics.addBytes(r);
+                watch.add(r);
+                ByteBuffer chunk = ByteBuffer.wrap(buf, 0, r);
+                while (chunk.hasRemaining()) {
+                    written += out.write(chunk, written);
+                }
+                // Checked as it arrives, so a broken jar is rejected without reading the file back
+                if (zip != null) zip.update(buf, 0, r);
+                watch.pace(throttle);
+            }
+            if (expected >= 0 && written != expected) {
+                String error = "Truncated download: got " + written + " of " + expected + " bytes";
+                round.onFailure(error);
+                throw new IOException(error);
             }
+            if (zip != null) zip.finish();
+            out.truncate(written);
+            if (FsyncPolicy.fromString(cfg.staging.fsync) != FsyncPolicy.NONE) {
+                out.force(true);
+            }
+        } catch (IOException e) {
+            recordIfOverdue(resp.uri(), watchdog);
+            throw e;
+        }
+        throughput.record(resp.uri().getAuthority(), watchdog.transferred(), watchdog.activeNanos());
+        round.onSuccess();
+    }
+
+    /**
+     * Fetches the file as concurrent byte ranges, each written at its offset. Returns false without
+     * downloading anything when the server does not advertise byte ranges and a length, so the
+     * caller can fall back to a single stream.
+     */
+    private boolean downloadSegmented(String url, Path target, int segments, TransferWatchdog watchdog,
+                                      CircuitBreaker.Round round) throws IOException {
+        // HTTP/2 would multiplex every range over one TCP connection and share its window; ranges only
+        // help when each gets a connection of its own, so the probe and the ranges stay on HTTP/1.1
+        HttpRequest headReq = HttpRequest.newBuilder(URI.create(url))
+                .version(HttpClient.Version.HTTP_1_1)
+                .timeout(METADATA_TIMEOUT)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<Void> head;
+        try {
+            head = http().send(headReq, HttpResponse.BodyHandlers.discarding());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IOException("Interrupted", e);
+        } catch (IOException e) {
+            round.onFailure(describe(e));
+            throw e;
+        }
+        if (isUpstreamFailure(head.statusCode())) {
+            round.onFailure("HTTP " + head.statusCode());
+            throw new IOException("HTTP " + head.statusCode() + " when downloading " + url);
+        }
+        boolean acceptsRanges = head.headers().allValues("Accept-Ranges").stream()
+                .anyMatch(v -> v.toLowerCase(Locale.ROOT).contains("bytes"));
+        long length = head.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        int count = (int) Math.min(segments, length / MIN_SEGMENT_BYTES);
+        if (head.statusCode() != 200 || !acceptsRanges || count < 2) {
+            return false;
+        }
+
+        // Ask the host we were redirected to directly; the client reuses its connections
+        URI uri = head.uri();
+        expect(watchdog, uri, length);
+        RangeSet ranges = new RangeSet();
+        List<CompletableFuture<Long>> parts = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < count; i++) {
+                long from = length * i / count;
+                long to = length * (i + 1) / count - 1;
+                parts.add(fetchRange(uri, out, from, to, length, watchdog, ranges, RANGE_ATTEMPTS));
+            }
+            try {
+                CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                IOException failure = cause instanceof IOException io ? io : new IOException(describe(cause), cause);
+                // The other ranges are still running on the client; stop them before the file is closed
+                ranges.abort(failure);
+                awaitQuietly(parts);
+                recordIfOverdue(uri, watchdog);
+                round.onFailure(describe(cause));
+                throw failure;
+            }
+            if (FsyncPolicy.fromString(cfg.staging.fsync) != FsyncPolicy.NONE) {
+                out.force(true);
+            }
+        }
+        throughput.record(uri.getAuthority(), watchdog.transferred(), watchdog.activeNanos());
+        round.onSuccess();
+        return true;
+    }
+
+    // A failed or stalled range is fetched again on its own instead of failing the whole file
+    private CompletableFuture<Long> fetchRange(URI uri, FileChannel out, long from, long to, long length,
+                                               TransferWatchdog watchdog, RangeSet ranges, int attempts) {
+        HttpRequest req = HttpRequest.newBuilder(uri)
+                .version(HttpClient.Version.HTTP_1_1)
+                .timeout(HEADERS_TIMEOUT)
+                .header("Range", "bytes=" + from + "-" + to)
+                .GET()
+                .build();
+        String expectedRange = "bytes " + from + "-" + to + "/" + length;
+        LoadThrottle throttle = newThrottle();
+        AtomicReference<PositionalBodySubscriber> receiving = new AtomicReference<>();
+        CompletableFuture<HttpResponse<Long>> request = http().sendAsync(req, info -> {
+            IOException aborted = ranges.aborted;
+            if (aborted != null) {
+                return PositionalBodySubscriber.rejecting(aborted);
+            }
+            if (info.statusCode() != 206 || !info.headers().firstValue("Content-Range").orElse("").equals(expectedRange)) {
+                return PositionalBodySubscriber.rejecting(new IOException("HTTP " + info.statusCode() + " for range " + expectedRange));
+            }
+            PositionalBodySubscriber body = new PositionalBodySubscriber(out, from, to - from + 1, metrics::addBytes, throttle, watchdog);
+            receiving.set(body);
+            ranges.track(body);
+            return body;
+        });
+        ranges.track(request);
+        return request.thenApply(HttpResponse::body).exceptionallyCompose(t -> {
+            if (attempts <= 1 || ranges.aborted != null || watchdog.failure() != null) {
+                return CompletableFuture.failedFuture(t);
+            }
+            // What the failed attempt received is fetched again, so only the retry's bytes count
+            PositionalBodySubscriber failed = receiving.get();
+            if (failed != null) failed.discard();
+            return fetchRange(uri, out, from, to, length, watchdog, ranges, attempts - 1);
+        });
+    }
+
+    private static void awaitQuietly(List<CompletableFuture<Long>> parts) {
+        for (CompletableFuture<Long> part : parts) {
+            try {
+                part.join();
+            } catch (CompletionException | CancellationException ignored) {
+                // already reported through the first failure
+            }
+        }
+    }
+
+    // Resets and stalls mid-transfer count against the API; local disk errors while writing do not
+    private int readBody(InputStream in, byte[] buf, TransferWatchdog.Channel watch, CircuitBreaker.Round round) throws IOException {
+        int r;
+        try {
+            r = in.read(buf);
+        } catch (IOException e) {
+            // The watchdog's reason is more useful than whatever closing the body made the read throw
+            IOException cause = watch.failure() != null ? watch.failure() : e;
+            round.onFailure(describe(cause));
+            throw cause;
+        }
+        if (r == -1 && watch.failure() != null) {
+            round.onFailure(describe(watch.failure()));
+            throw watch.failure();
+        }
+        return r;
+    }
+
+    private TransferWatchdog newWatchdog(Project project, ProgressListener progress) {
+        return new TransferWatchdog(watchdogTimer(),
+                Math.max(1, cfg.download.stallBytes),
+                Duration.ofSeconds(Math.max(1, cfg.download.stallSeconds)),
+                progress == ProgressListener.NONE ? Duration.ZERO : Duration.ofSeconds(Math.max(0, cfg.download.progressSeconds)),
+                (bytes, total, rate) -> progress.onProgress(new DownloadProgress(project, bytes, total, rate)));
+    }
+
+    private void expect(TransferWatchdog watchdog, URI uri, long length) {
+        watchdog.expect(length, throughput.deadline(uri.getAuthority(), length, DEADLINE_FACTOR, MIN_DEADLINE)
+                .orElseGet(() -> fallbackDeadline(length)));
+    }
+
+    static Duration fallbackDeadline(long length) {
+        if (length <= 0) return UNKNOWN_LENGTH_DEADLINE;
+        return MIN_DEADLINE.plusMillis(length * 1000 / FALLBACK_BYTES_PER_SECOND);
+    }
+
+    // A download cut off by its deadline still tells how fast the host is now, so the next deadline adapts
+    private void recordIfOverdue(URI uri, TransferWatchdog watchdog) {
+        if (watchdog.failure() != null) {
+            throughput.record(uri.getAuthority(), watchdog.transferred(), watchdog.activeNanos());
         }
     }
 
-    private Path findExistingJar(Project project, Path pluginsDir) throws IOException {
-        if (!Files.exists(pluginsDir)) return null;
+    private static void closeQuietly(InputStream in) {
         try {
-            List<Path> matches = Files.list(pluginsDir)
-                    .filter(p -> {
-                        String name = p.getFileName().toString().toLowerCase(Locale.ROOT);
-                        return name.endsWith(".jar") &&
-                                name.contains(project.fileHint());
-                    })
+            in.close();
+        } catch (IOException ignored) {
+            // only used to abort
+        }
+    }
+
+    // Server errors and rate limiting mean the API is struggling; other statuses are answers
+    private static boolean isUpstreamFailure(int status) {
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * Removes downloads left behind in the staging folder by a run that was killed mid-way, and
+     * copies a cross-filesystem move left next to a target's jar. Call once at startup, before any
+     * check can be in flight.
+     */
+    public void cleanStaging(Path pluginsDir) {
+        deleteLeftovers(pluginsDir.resolve(STAGING_DIR), STAGING_SUFFIX);
+        // A move across filesystems copies next to the jar first; a crash before the rename leaves that copy behind
+        Set<Path> folders = new LinkedHashSet<>();
+        folders.add(pluginsDir);
+        for (Project p : cfg.targets.all()) {
+            try {
+                Path folder = resolveDestination(p.destination(), pluginsDir);
+                if (folder != null) folders.add(folder);
+            } catch (IOException e) {
+                log.warn(cfg.messages.stagingCleanupFailed.replace("{file}", p.destination()).replace("{error}", describe(e)));
+            }
+        }
+        for (Path folder : folders) {
+            deleteLeftovers(folder, FileUtils.MOVE_TEMP_SUFFIX);
+        }
+    }
+
+    private void deleteLeftovers(Path dir, String suffix) {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(suffix)).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    log.warn(cfg.messages.stagingCleanupFailed.replace("{file}", p.toString()).replace("{error}", describe(e)));
+                }
+            });
+        } catch (IOException e) {
+            log.warn(cfg.messages.stagingCleanupFailed.replace("{file}", dir.toString()).replace("{error}", describe(e)));
+        }
+    }
+
+    private String base() {
+        String base = cfg.download.baseUrl;
+        return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
+    // Some exceptions (e.g. ConnectException) carry no message
+    public static String describe(Throwable t) {
+        return t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+    }
+
+    private String installedSha(Path jar) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(jar, BasicFileAttributes.class);
+        InstalledHash cached = installedHashes.get(jar);
+        if (cached != null && cached.matches(attrs)) return cached.sha256;
+        String sha = FileUtils.sha256(jar, newThrottle());
+        installedHashes.put(jar, new InstalledHash(attrs, sha));
+        return sha;
+    }
+
+    private static final class SharedCheck {
+        final boolean deferHeavy;
+        final CompletableFuture<List<UpdateOutcome>> result = new CompletableFuture<>();
+        volatile boolean fetched;
+
+        SharedCheck(boolean deferHeavy) {
+            this.deferHeavy = deferHeavy;
+        }
+    }
+
+    /** The range requests of one segmented download, so a failure can stop all of them. */
+    private static final class RangeSet {
+        private final Set<PositionalBodySubscriber> bodies = ConcurrentHashMap.newKeySet();
+        private final Set<CompletableFuture<?>> requests = ConcurrentHashMap.newKeySet();
+        volatile IOException aborted;
+
+        void track(PositionalBodySubscriber body) {
+            bodies.add(body);
+            IOException reason = aborted;
+            if (reason != null) body.abort(reason);
+        }
+
+        void track(CompletableFuture<?> request) {
+            requests.add(request);
+            if (aborted != null) request.cancel(true);
+        }
+
+        // Bodies first: once their abort returns, none of them writes to the file again
+        void abort(IOException reason) {
+            aborted = reason;
+            bodies.forEach(b -> b.abort(reason));
+            requests.forEach(r -> r.cancel(true));
+        }
+    }
+
+    private static final class InstalledHash {
+        final long size;
+        final FileTime modified;
+        final Object fileKey;
+        final String sha256;
+
+        InstalledHash(BasicFileAttributes attrs, String sha256) {
+            this.size = attrs.size();
+            this.modified = attrs.lastModifiedTime();
+            this.fileKey = attrs.fileKey();
+            this.sha256 = sha256;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && modified.equals(attrs.lastModifiedTime()) && Objects.equals(fileKey, attrs.fileKey());
+        }
+    }
+
+    private LoadThrottle newThrottle() {
+        return new LoadThrottle(loadSignal, cfg.throttle);
+    }
+
+    private Path findExistingJar(Project project, Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) return null;
+        try (Stream<Path> files = Files.list(folder)) {
+            List<Path> matches = files
+                    .filter(p -> project.matches(p.getFileName().toString()))
+                    .sorted()
                     .collect(Collectors.toList());
             if (matches.isEmpty()) return null;
             // Prefer jars that also contain platform hint words, but fallback to first
@@ -139,33 +866,32 @@ public class UpdaterService {
                 return n.contains("spigot") || n.contains("paper") || n.contains("bungee") || n.contains("velocity");
             }).findFirst();
             return preferred.orElse(matches.get(0));
-        } catch (IOException e) {
-            throw e;
         }
     }
 
-    private Path defaultDestination(Project project, Platform platform, Path pluginsDir) {
-        String filename;
-        switch (project) {
-            case GEYSER:
-                switch (platform) {
-                    case SPIGOT: filename = "Geyser-Spigot.jar"; break;
-                    case BUNGEECORD: filename = "Geyser-BungeeCord.jar"; break;
-                    case VELOCITY: filename = "Geyser-Velocity.jar"; break;
-                    default: filename = "Geyser.jar";
-                }
-                break;
-            case FLOODGATE:
-                switch (platform) {
-                    case SPIGOT: filename = "floodgate-spigot.jar"; break;
-                    case BUNGEECORD: filename = "floodgate-bungee.jar"; break;
-                    case VELOCITY: filename = "floodgate-velocity.jar"; break;
-                    default: filename = "floodgate.jar";
-                }
-                break;
-            default:
-                filename = "plugin.jar";
+    /**
+     * Resolves a target's destination folder below the plugins directory. Segments may be globs
+     * (e.g. {@code Geyser-*}/extensions), which must match an existing directory; returns null if none does.
+     */
+    static Path resolveDestination(String destination, Path pluginsDir) throws IOException {
+        Path current = pluginsDir;
+        for (String segment : destination.replace('\\', '/').split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0) {
+                current = current.resolve(segment);
+                continue;
+            }
+            if (!Files.isDirectory(current)) return null;
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + segment);
+            try (Stream<Path> dirs = Files.list(current)) {
+                Optional<Path> match = dirs.filter(Files::isDirectory)
+                        .filter(p -> matcher.matches(p.getFileName()))
+                        .sorted()
+                        .findFirst();
+                if (match.isEmpty()) return null;
+                current = match.get();
+            }
         }
-        return pluginsDir.resolve(filename);
+        return current;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,347 @@
+package org.geyserupdater.core.cli;
+
+import org.geyserupdater.core.BuildInfo;
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.ConfigManager;
+import org.geyserupdater.core.Platform;
+import org.geyserupdater.core.Project;
+import org.geyserupdater.core.UpdaterService;
+import org.geyserupdater.core.logging.LogAdapter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+/**
+ * Updates the targets of many server directories from one process, e.g. while baking server
+ * images, without starting any of the servers.
+ *
+ * <pre>java -jar core-cli.jar [--config DIR] [--cache DIR] [--parallel N] SERVER_DIR:PLATFORM...</pre>
+ *
+ * Build metadata is fetched once, each build is downloaded once into the cache and then
+ * hard-linked (copied when the cache is on another filesystem) into every server that needs it.
+ * Prints one JSON object per server and target to stdout; logs go to stderr. Exits 0 when every
+ * target is up to date or was updated, 1 when any failed and 2 on bad usage.
+ */
+public final class HeadlessUpdater {
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String USAGE =
+            "Usage: java -jar core-cli.jar [--config DIR] [--cache DIR] [--parallel N] SERVER_DIR:PLATFORM...\n"
+            + "  SERVER_DIR  server root containing plugins/\n"
+            + "  PLATFORM    spigot | bungeecord | velocity\n"
+            + "  --config    folder with config.yml (targets, download.baseUrl, ...); defaults are used otherwise\n"
+            + "  --cache     where builds are downloaded once; put it on the servers' filesystem so they can be hard-linked\n"
+            + "  --parallel  servers updated at the same time (default 4)";
+
+    private final UpdaterService service;
+    private final Config cfg;
+    private final Path cache;
+    // One download per project build and platform key, shared by every server that needs it
+    private final Map<String, CompletableFuture<Path>> artifacts = new ConcurrentHashMap<>();
+
+    private HeadlessUpdater(UpdaterService service, Config cfg, Path cache) {
+        this.service = service;
+        this.cfg = cfg;
+        this.cache = cache;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Path configDir = null;
+        Path cacheDir = null;
+        int parallel = 4;
+        List<Server> servers = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--config":
+                        configDir = Paths.get(value(args, ++i));
+                        if (!Files.isDirectory(configDir)) throw new IllegalArgumentException("Not a directory: " + configDir);
+                        break;
+                    case "--cache":
+                        cacheDir = Paths.get(value(args, ++i));
+                        break;
+                    case "--parallel":
+                        parallel = Math.max(1, Integer.parseInt(value(args, ++i)));
+                        break;
+                    case "-h":
+                    case "--help":
+                        out.println(USAGE);
+                        return EXIT_OK;
+                    default:
+                        servers.add(Server.parse(args[i]));
+                }
+            }
+            if (servers.isEmpty()) throw new IllegalArgumentException("No server directories given");
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        // Read-only: a CLI flag must not leave a default config.yml behind in the folder it names
+        Config cfg = configDir == null ? new Config() : new ConfigManager(configDir, new StderrLog(err)).load();
+        boolean ownCache = cacheDir == null;
+        try (UpdaterService service = new UpdaterService(new StderrLog(err), cfg)) {
+            // Staged files and move copies a killed earlier run left behind
+            for (Server server : servers) {
+                service.cleanStaging(server.pluginsDir());
+            }
+            Path cache = ownCache ? Files.createTempDirectory("geyserupdater-cli") : Files.createDirectories(cacheDir);
+            try {
+                HeadlessUpdater updater = new HeadlessUpdater(service, cfg, cache);
+                try {
+                    List<Result> results = updater.updateAll(servers, parallel);
+                    for (Result r : results) {
+                        out.println(r.toJson());
+                    }
+                    return results.stream().anyMatch(r -> r.outcome.error.isPresent()) ? EXIT_FAILED : EXIT_OK;
+                } finally {
+                    // Servers keep their own links; only the cache's copies go
+                    updater.removeArtifacts();
+                }
+            } finally {
+                if (ownCache) deleteRecursively(cache);
+            }
+        } catch (IOException e) {
+            err.println(UpdaterService.describe(e));
+            return EXIT_FAILED;
+        }
+    }
+
+    private List<Result> updateAll(List<Server> servers, int parallel) {
+        Set<Platform> platforms = EnumSet.noneOf(Platform.class);
+        servers.forEach(s -> platforms.add(s.platform));
+        List<Project> targets = new ArrayList<>();
+        for (Platform p : platforms) {
+            targets.addAll(cfg.targets.enabledFor(p));
+        }
+        Map<String, BuildInfo> builds = service.fetchBuilds(targets);
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        try {
+            Map<CompletableFuture<UpdaterService.UpdateOutcome>, Server> jobs = new LinkedHashMap<>();
+            for (Server server : servers) {
+                for (Project project : cfg.targets.enabledFor(server.platform)) {
+                    BuildInfo build = builds.get(project.apiName());
+                    jobs.put(CompletableFuture.supplyAsync(() -> updateOne(server, project, build), pool), server);
+                }
+            }
+            List<Result> results = new ArrayList<>();
+            for (Map.Entry<CompletableFuture<UpdaterService.UpdateOutcome>, Server> job : jobs.entrySet()) {
+                UpdaterService.UpdateOutcome outcome = job.getKey().join();
+                results.add(new Result(job.getValue(), outcome, builds.get(outcome.project.apiName())));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private UpdaterService.UpdateOutcome updateOne(Server server, Project project, BuildInfo build) {
+        try {
+            String key = project.downloadKey(server.platform).orElseThrow();
+            UpdaterService.Placement placement = service.locate(project, server.platform, server.pluginsDir());
+            if (placement == null) {
+                return failed(project, cfg.messages.destinationNotFound.replace("{destination}", project.destination()));
+            }
+            if (service.isCurrent(placement, build, key)) {
+                return new UpdaterService.UpdateOutcome(project, false, true, Optional.empty());
+            }
+
+            Path shared;
+            try {
+                shared = artifact(project, build, key);
+            } catch (IOException e) {
+                return failed(project, e.getMessage());
+            }
+
+            Path staged = UpdaterService.newStagingFile(server.pluginsDir(), project);
+            try {
+                Files.delete(staged);
+                try {
+                    Files.createLink(staged, shared);
+                } catch (IOException | UnsupportedOperationException e) {
+                    // Cache on another filesystem (or no hard links): fall back to a copy
+                    Files.copy(shared, staged, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return service.install(project, placement, staged, build != null && build.sha256(key).isPresent());
+            } finally {
+                Files.deleteIfExists(staged);
+            }
+        } catch (Exception e) {
+            return failed(project, UpdaterService.describe(e));
+        }
+    }
+
+    /**
+     * Returns the verified download for this build and key, downloading it on the calling thread
+     * if no other server has asked for it yet and waiting for that download otherwise.
+     */
+    private Path artifact(Project project, BuildInfo build, String key) throws IOException {
+        String id = project.apiName() + "/" + (build == null ? "latest" : build.build) + "/" + key;
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> existing = artifacts.putIfAbsent(id, mine);
+        if (existing == null) {
+            try {
+                Path file = Files.createTempFile(cache, project.apiName() + "-" + key + "-", ".jar");
+                try {
+                    try {
+                        service.download(project, build, key, file);
+                    } catch (ZipException e) {
+                        throw new IOException(cfg.messages.invalidJar.replace("{error}", UpdaterService.describe(e)), e);
+                    } catch (IOException e) {
+                        throw new IOException(cfg.messages.downloadFailed.replace("{error}", UpdaterService.describe(e)), e);
+                    }
+                    if (!service.matchesPublished(file, build, key)) {
+                        throw new IOException(cfg.messages.checksumMismatch);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+                mine.complete(file);
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+            }
+            existing = mine;
+        }
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof IOException io ? io : new IOException(UpdaterService.describe(cause), cause);
+        }
+    }
+
+    private void removeArtifacts() throws IOException {
+        for (CompletableFuture<Path> f : artifacts.values()) {
+            if (f.isDone() && !f.isCompletedExceptionally()) Files.deleteIfExists(f.join());
+        }
+    }
+
+    private static UpdaterService.UpdateOutcome failed(Project project, String error) {
+        return new UpdaterService.UpdateOutcome(project, false, false, Optional.of(error));
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        return args[i];
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    static final class Server {
+        final Path dir;
+        final Platform platform;
+
+        Server(Path dir, Platform platform) {
+            this.dir = dir;
+            this.platform = platform;
+        }
+
+        // Split on the last colon so Windows drive letters survive
+        static Server parse(String arg) {
+            int idx = arg.lastIndexOf(':');
+            if (idx <= 0 || idx == arg.length() - 1) {
+                throw new IllegalArgumentException("Expected SERVER_DIR:PLATFORM, got " + arg);
+            }
+            Path dir = Paths.get(arg.substring(0, idx));
+            if (!Files.isDirectory(dir)) throw new IllegalArgumentException("Not a directory: " + dir);
+            return new Server(dir, Platform.fromString(arg.substring(idx + 1)));
+        }
+
+        Path pluginsDir() {
+            return dir.resolve("plugins");
+        }
+    }
+
+    static final class Result {
+        final Server server;
+        final UpdaterService.UpdateOutcome outcome;
+        final BuildInfo build;
+
+        Result(Server server, UpdaterService.UpdateOutcome outcome, BuildInfo build) {
+            this.server = server;
+            this.outcome = outcome;
+            this.build = build;
+        }
+
+        String status() {
+            if (outcome.error.isPresent()) return "failed";
+            return outcome.updated ? "updated" : "upToDate";
+        }
+
+        String toJson() {
+            StringBuilder sb = new StringBuilder("{");
+            sb.append("\"server\":").append(quote(server.dir.toString()));
+            sb.append(",\"platform\":").append(quote(server.platform.apiName()));
+            sb.append(",\"project\":").append(quote(outcome.project.id()));
+            sb.append(",\"status\":").append(quote(status()));
+            if (build != null && build.build >= 0) {
+                sb.append(",\"version\":").append(quote(build.version)).append(",\"build\":").append(build.build);
+            }
+            outcome.error.ifPresent(e -> sb.append(",\"error\":").append(quote(e)));
+            return sb.append('}').toString();
+        }
+
+        private static String quote(String s) {
+            StringBuilder sb = new StringBuilder("\"");
+            for (char c : s.toCharArray()) {
+                switch (c) {
+                    case '"': sb.append("\\\""); break;
+                    case '\\': sb.append("\\\\"); break;
+                    case '\n': sb.append("\\n"); break;
+                    case '\r': sb.append("\\r"); break;
+                    case '\t': sb.append("\\t"); break;
+                    default:
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+
+    private static final class StderrLog implements LogAdapter {
+        private final PrintStream err;
+
+        StderrLog(PrintStream err) {
+            this.err = err;
+        }
+
+        @Override public void info(String msg) { err.println("[INFO] " + msg); }
+        @Override public void warn(String msg) { err.println("[WARN] " + msg); }
+        @Override public void error(String msg, Throwable t) { err.println("[ERROR] " + msg + " : " + t.getMessage()); }
+    }
+}
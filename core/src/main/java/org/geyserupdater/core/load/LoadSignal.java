@@ -0,0 +1,19 @@
+package org.geyserupdater.core.load;
+
+/**
+ * Recent server load as reported by the platform. Implementations are read from
+ * worker threads, so both methods must be cheap and thread-safe.
+ */
+public interface LoadSignal {
+    /** Signal for platforms without a tick loop (proxies): never reports load. */
+    LoadSignal NONE = new LoadSignal() {
+        @Override public double mspt() { return Double.NaN; }
+        @Override public double tps() { return Double.NaN; }
+    };
+
+    /** Average milliseconds spent per tick recently, or NaN if unknown. */
+    double mspt();
+
+    /** Recent ticks per second, or NaN if unknown. */
+    double tps();
+}
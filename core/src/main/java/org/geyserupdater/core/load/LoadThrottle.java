@@ -0,0 +1,75 @@
+package org.geyserupdater.core.load;
+
+import org.geyserupdater.core.Config;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces a single download or hash so it backs off while the server is lagging.
+ * Work pauses while the load signal is above the configured limits; once the pause
+ * budget is spent it keeps going with a short sleep per chunk so it still finishes.
+ * Not thread-safe: create one per operation, and ask it from one thread at a time.
+ */
+public class LoadThrottle {
+    private static final long POLL_MILLIS = 250;
+    private static final long SLOW_STEP_MILLIS = 20;
+
+    private final LoadSignal signal;
+    private final boolean enabled;
+    private final double msptThreshold;
+    private final double minTps;
+    private long pauseBudgetNanos;
+    private boolean slowStepTaken;
+
+    public LoadThrottle(LoadSignal signal, Config.Throttle cfg) {
+        this.signal = signal;
+        this.enabled = cfg.enabled && signal != LoadSignal.NONE;
+        this.msptThreshold = cfg.msptThreshold;
+        this.minTps = cfg.minTps;
+        this.pauseBudgetNanos = TimeUnit.SECONDS.toNanos(Math.max(0, cfg.maxPauseSeconds));
+    }
+
+    /** False when {@link #pace()} never blocks, e.g. on proxies or with throttling turned off. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Called between chunks of work; blocks while the server is busy. */
+    public void pace() throws InterruptedIOException {
+        try {
+            for (long wait; (wait = pauseMillis()) > 0; ) {
+                Thread.sleep(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    /**
+     * The non-blocking form of {@link #pace()}: how long to wait before asking again, or 0 once the
+     * next chunk may go ahead. Lets callers that must not block, such as a body subscriber on the
+     * HTTP client's threads, wait on a timer instead.
+     */
+    public long pauseMillis() {
+        if (!enabled || !busy()) {
+            slowStepTaken = false;
+            return 0;
+        }
+        if (pauseBudgetNanos > 0) {
+            pauseBudgetNanos -= TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS);
+            return POLL_MILLIS;
+        }
+        // Out of budget: one short step per chunk so the work still finishes
+        slowStepTaken = !slowStepTaken;
+        return slowStepTaken ? SLOW_STEP_MILLIS : 0;
+    }
+
+    private boolean busy() {
+        double mspt = signal.mspt();
+        if (!Double.isNaN(mspt) && msptThreshold > 0 && mspt > msptThreshold) return true;
+        double tps = signal.tps();
+        return !Double.isNaN(tps) && minTps > 0 && tps < minTps;
+    }
+}
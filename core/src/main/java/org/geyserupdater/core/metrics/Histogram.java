@@ -0,0 +1,41 @@
+package org.geyserupdater.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-bucket latency histogram in seconds; recording and reading never lock. */
+final class Histogram {
+    static final double[] BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+    // counts[i] holds observations <= BUCKETS[i] and > BUCKETS[i - 1]; the last slot is +Inf
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram() {
+        for (int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+    }
+
+    void observeNanos(long nanos) {
+        double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        int i = 0;
+        while (i < BUCKETS.length && seconds > BUCKETS[i]) i++;
+        counts[i].increment();
+        sum.add(seconds);
+    }
+
+    /** Cumulative counts per bucket as Prometheus expects them, +Inf last. */
+    long[] cumulative() {
+        long[] out = new long[counts.length];
+        long running = 0;
+        for (int i = 0; i < counts.length; i++) {
+            running += counts[i].sum();
+            out[i] = running;
+        }
+        return out;
+    }
+
+    double sum() {
+        return sum.sum();
+    }
+}
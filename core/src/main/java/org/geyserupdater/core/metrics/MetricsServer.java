@@ -0,0 +1,80 @@
+package org.geyserupdater.core.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.UpdaterService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@code /metrics} (Prometheus text format) and {@code /health} (JSON) for one
+ * {@link UpdaterService}. Requests run on a single daemon thread of their own and only read
+ * snapshots, so a scrape neither waits for nor delays a running check.
+ */
+public class MetricsServer implements AutoCloseable {
+    private final Config.Metrics settings;
+    private final UpdaterService service;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsServer(Config.Metrics settings, UpdaterService service) {
+        this.settings = settings;
+        this.service = service;
+    }
+
+    public synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(settings.host), settings.port), 0);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "GeyserUpdater-Metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", ex -> respond(ex, 200, "text/plain; version=0.0.4; charset=utf-8",
+                service.metrics().prometheus(service.circuitState())));
+        server.createContext("/health", ex -> {
+            UpdateMetrics m = service.metrics();
+            // 503 lets plain HTTP probes alert without parsing the document
+            respond(ex, m.degraded(service.circuitState()) ? 503 : 200, "application/json; charset=utf-8",
+                    m.healthJson(service.circuitState()));
+        });
+        server.start();
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    private static void respond(HttpExchange ex, int status, String contentType, String body) throws IOException {
+        try (ex) {
+            if (!"GET".equals(ex.getRequestMethod()) && !"HEAD".equals(ex.getRequestMethod())) {
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", contentType);
+            ex.getResponseHeaders().set("Cache-Control", "no-store");
+            if ("HEAD".equals(ex.getRequestMethod())) {
+                ex.sendResponseHeaders(status, -1);
+                return;
+            }
+            ex.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -0,0 +1,177 @@
+package org.geyserupdater.core.metrics;
+
+import org.geyserupdater.core.BuildInfo;
+import org.geyserupdater.core.CircuitBreaker;
+import org.geyserupdater.core.UpdaterService;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the update pipeline. Checks write to adders and volatile fields only, so rendering
+ * never waits for a check in flight and a check never waits for a scrape.
+ */
+public final class UpdateMetrics {
+    public enum Phase {
+        METADATA,
+        DOWNLOAD,
+        VERIFY,
+        INSTALL;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder checksOk = new LongAdder();
+    private final LongAdder checksFailed = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+    private final Map<String, BuildInfo> installed = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long lastSuccessEpochSecond = -1;
+    private volatile long lastCheckEpochSecond = -1;
+    private volatile boolean lastCheckFailed;
+
+    public UpdateMetrics() {
+        for (Phase p : Phase.values()) phases.put(p, new Histogram());
+    }
+
+    public void checkStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void checkFinished(List<UpdaterService.UpdateOutcome> results) {
+        boolean failed = false;
+        for (UpdaterService.UpdateOutcome r : results) {
+            String outcome = r.error.isPresent() ? "failed" : r.updated ? "updated" : r.pending ? "pending" : "up_to_date";
+            failed |= r.error.isPresent();
+            outcomes.computeIfAbsent(r.project.id() + '\0' + outcome, k -> new LongAdder()).increment();
+        }
+        long now = Instant.now().getEpochSecond();
+        (failed ? checksFailed : checksOk).increment();
+        lastCheckFailed = failed;
+        lastCheckEpochSecond = now;
+        if (!failed && !results.isEmpty()) lastSuccessEpochSecond = now;
+        inFlight.decrementAndGet();
+    }
+
+    /** Carries the last success over from an earlier run (e.g. from CheckHistory). */
+    public void seedLastSuccess(Instant when) {
+        if (lastSuccessEpochSecond < 0) lastSuccessEpochSecond = when.getEpochSecond();
+    }
+
+    public void observe(Phase phase, long nanos) {
+        phases.get(phase).observeNanos(nanos);
+    }
+
+    public void addBytes(long n) {
+        bytesDownloaded.add(n);
+    }
+
+    public void installed(String projectId, BuildInfo build) {
+        if (build != null && build.build >= 0) installed.put(projectId, build);
+    }
+
+    public boolean checkInFlight() {
+        return inFlight.get() > 0;
+    }
+
+    /** Prometheus text exposition format, version 0.0.4. */
+    public String prometheus(CircuitBreaker.State circuit) {
+        StringBuilder sb = new StringBuilder(2048);
+        header(sb, "geyserupdater_checks_total", "counter", "Update checks run, by result.");
+        sb.append("geyserupdater_checks_total{result=\"ok\"} ").append(checksOk.sum()).append('\n');
+        sb.append("geyserupdater_checks_total{result=\"failed\"} ").append(checksFailed.sum()).append('\n');
+
+        header(sb, "geyserupdater_target_outcomes_total", "counter", "Per-target results of update checks.");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(outcomes).entrySet()) {
+            String[] parts = e.getKey().split("\0", 2);
+            sb.append("geyserupdater_target_outcomes_total{project=\"").append(escape(parts[0]))
+                    .append("\",outcome=\"").append(parts[1]).append("\"} ").append(e.getValue().sum()).append('\n');
+        }
+
+        header(sb, "geyserupdater_downloaded_bytes_total", "counter", "Bytes received from the download API.");
+        sb.append("geyserupdater_downloaded_bytes_total ").append(bytesDownloaded.sum()).append('\n');
+
+        header(sb, "geyserupdater_phase_duration_seconds", "histogram", "Time spent per phase of an update check.");
+        for (Map.Entry<Phase, Histogram> e : phases.entrySet()) {
+            String phase = e.getKey().label();
+            long[] cumulative = e.getValue().cumulative();
+            for (int i = 0; i < cumulative.length; i++) {
+                String le = i < Histogram.BUCKETS.length ? String.valueOf(Histogram.BUCKETS[i]) : "+Inf";
+                sb.append("geyserupdater_phase_duration_seconds_bucket{phase=\"").append(phase)
+                        .append("\",le=\"").append(le).append("\"} ").append(cumulative[i]).append('\n');
+            }
+            sb.append("geyserupdater_phase_duration_seconds_sum{phase=\"").append(phase).append("\"} ")
+                    .append(e.getValue().sum()).append('\n');
+            sb.append("geyserupdater_phase_duration_seconds_count{phase=\"").append(phase).append("\"} ")
+                    .append(cumulative[cumulative.length - 1]).append('\n');
+        }
+
+        if (lastSuccessEpochSecond >= 0) {
+            header(sb, "geyserupdater_last_success_timestamp_seconds", "gauge", "Unix time of the last check without errors.");
+            sb.append("geyserupdater_last_success_timestamp_seconds ").append(lastSuccessEpochSecond).append('\n');
+        }
+
+        header(sb, "geyserupdater_installed_build", "gauge", "Build number installed per project, when known.");
+        for (Map.Entry<String, BuildInfo> e : new TreeMap<>(installed).entrySet()) {
+            sb.append("geyserupdater_installed_build{project=\"").append(escape(e.getKey()))
+                    .append("\",version=\"").append(escape(e.getValue().version)).append("\"} ")
+                    .append(e.getValue().build).append('\n');
+        }
+
+        header(sb, "geyserupdater_check_in_progress", "gauge", "1 while a check is running.");
+        sb.append("geyserupdater_check_in_progress ").append(checkInFlight() ? 1 : 0).append('\n');
+
+        header(sb, "geyserupdater_circuit_open", "gauge", "1 while the download API circuit breaker refuses calls.");
+        sb.append("geyserupdater_circuit_open ").append(circuit == CircuitBreaker.State.CLOSED ? 0 : 1).append('\n');
+        return sb.toString();
+    }
+
+    /** Whether the last check failed or the circuit breaker is not closed. */
+    public boolean degraded(CircuitBreaker.State circuit) {
+        return lastCheckFailed || circuit != CircuitBreaker.State.CLOSED;
+    }
+
+    public String healthJson(CircuitBreaker.State circuit) {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"status\":\"").append(degraded(circuit) ? "degraded" : "ok").append('"');
+        sb.append(",\"checkInProgress\":").append(checkInFlight());
+        sb.append(",\"lastCheck\":").append(timestamp(lastCheckEpochSecond));
+        sb.append(",\"lastCheckFailed\":").append(lastCheckFailed);
+        sb.append(",\"lastSuccess\":").append(timestamp(lastSuccessEpochSecond));
+        sb.append(",\"circuit\":\"").append(circuit.name().toLowerCase(Locale.ROOT)).append('"');
+        sb.append(",\"installed\":{");
+        boolean first = true;
+        for (Map.Entry<String, BuildInfo> e : new TreeMap<>(installed).entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(escape(e.getKey())).append("\":{\"version\":\"").append(escape(e.getValue().version))
+                    .append("\",\"build\":").append(e.getValue().build).append('}');
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static String timestamp(long epochSecond) {
+        return epochSecond < 0 ? "null" : "\"" + Instant.ofEpochSecond(epochSecond) + "\"";
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // Valid for both Prometheus label values and JSON strings
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
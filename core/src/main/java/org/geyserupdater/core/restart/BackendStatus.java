@@ -0,0 +1,12 @@
+package org.geyserupdater.core.restart;
+
+/**
+ * The proxy's view of its backends, used to decide when a restarted server is serving players again.
+ */
+public interface BackendStatus {
+    /** Players currently routed to the named backend, or -1 if the proxy does not know it. */
+    int playerCount(String server);
+
+    /** Players connected to the whole proxy. */
+    int totalPlayers();
+}
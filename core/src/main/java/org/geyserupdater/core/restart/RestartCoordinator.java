@@ -0,0 +1,284 @@
+package org.geyserupdater.core.restart;
+
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.logging.LogAdapter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs on the proxy and hands out restart permits to backends that have staged an update,
+ * at most {@code maxConcurrent} at a time. A permit is held until the backend has come back
+ * (it says HELLO again after restarting) and has players routed to it, or until the return
+ * timeout expires.
+ *
+ * <p>Line protocol over TCP, one command per connection:
+ * <pre>
+ *   backend: STAGED &lt;server&gt;   proxy: QUEUED &lt;position&gt; ... GRANT
+ *   backend: HELLO &lt;server&gt;    proxy: OK
+ * </pre>
+ * With a secret configured, each command is preceded by {@code AUTH <secret>}. A backend that
+ * disconnects while queued gives up its place. All queue state is confined to a single scheduler thread.
+ */
+public class RestartCoordinator implements AutoCloseable {
+    private static final long TICK_MILLIS = 2_000;
+
+    private final LogAdapter log;
+    private final Config cfg;
+    private final BackendStatus status;
+    private final LongSupplier nanoClock;
+    private final long tickMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService connections;
+
+    private final Deque<Waiting> queue = new ArrayDeque<>();
+    private final Map<String, Permit> granted = new HashMap<>();
+    private ServerSocket serverSocket;
+
+    public RestartCoordinator(LogAdapter log, Config cfg, BackendStatus status) {
+        this(log, cfg, status, System::nanoTime, TICK_MILLIS);
+    }
+
+    /** For tests: a clock that can be moved past the return timeout, and a faster tick. */
+    RestartCoordinator(LogAdapter log, Config cfg, BackendStatus status, LongSupplier nanoClock, long tickMillis) {
+        this.log = log;
+        this.cfg = cfg;
+        this.status = status;
+        this.nanoClock = nanoClock;
+        this.tickMillis = tickMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("GeyserUpdater-Coordinator"));
+        this.connections = Executors.newCachedThreadPool(daemon("GeyserUpdater-Coordinator-Conn"));
+    }
+
+    public synchronized void start() throws IOException {
+        Config.RestartCoordinator c = cfg.restartCoordinator;
+        InetAddress address = InetAddress.getByName(c.host);
+        if (!address.isLoopbackAddress() && (c.secret == null || c.secret.isBlank())) {
+            // Anyone who can reach the socket could otherwise free permits early
+            throw new IOException(cfg.messages.coordinatorNoSecret);
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(address, c.port));
+        connections.execute(this::acceptLoop);
+        scheduler.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public InetSocketAddress address() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {
+            // shutting down anyway
+        }
+        if (!scheduler.isShutdown()) {
+            // Runs before the scheduler stops, so waiting backends see the proxy go and retry
+            scheduler.execute(() -> queue.forEach(w -> closeQuietly(w.socket)));
+            scheduler.shutdown();
+        }
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn(cfg.messages.coordinatorFailed.replace("{error}", String.valueOf(e.getMessage())));
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            socket.setSoTimeout(10_000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            String secret = cfg.restartCoordinator.secret;
+            if (secret != null && !secret.isBlank()) {
+                if (!authorized(line, secret)) {
+                    log.warn(cfg.messages.coordinatorUnauthorized.replace("{remote}", String.valueOf(socket.getInetAddress().getHostAddress())));
+                    send(socket, "ERROR unauthorized");
+                    socket.close();
+                    return;
+                }
+                line = in.readLine();
+            }
+            String[] parts = line == null ? new String[0] : line.trim().split("\\s+", 2);
+            if (parts.length == 2 && parts[0].equals("HELLO")) {
+                send(socket, "OK");
+                scheduler.execute(() -> onHello(parts[1]));
+                socket.close();
+            } else if (parts.length == 2 && parts[0].equals("STAGED")) {
+                // The backend now waits, possibly for a long time, until we grant its permit
+                socket.setSoTimeout(0);
+                scheduler.execute(() -> onStaged(parts[1], socket));
+                awaitDisconnect(in, socket);
+            } else {
+                send(socket, "ERROR unknown command");
+                socket.close();
+            }
+        } catch (IOException e) {
+            closeQuietly(socket);
+        }
+    }
+
+    static boolean authorized(String line, String secret) {
+        if (line == null || !line.startsWith("AUTH ")) return false;
+        byte[] given = line.substring(5).trim().getBytes(StandardCharsets.UTF_8);
+        // Constant time, so the secret cannot be guessed byte by byte from response timing
+        return MessageDigest.isEqual(given, secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** A waiting backend sends nothing more; the stream ending means it went away (or we closed it after GRANT). */
+    private void awaitDisconnect(BufferedReader in, Socket socket) {
+        try {
+            while (in.read() != -1) {
+                // ignore
+            }
+        } catch (IOException ignored) {
+            // reset by the backend, or closed by us
+        }
+        closeQuietly(socket);
+        try {
+            scheduler.execute(() -> queue.removeIf(w -> w.socket == socket));
+        } catch (RejectedExecutionException ignored) {
+            // shutting down; the queue goes with it
+        }
+    }
+
+    private void onHello(String server) {
+        Permit permit = granted.get(server);
+        if (permit != null && !permit.back) {
+            permit.back = true;
+        }
+    }
+
+    private void onStaged(String server, Socket socket) {
+        // A backend that reconnects (e.g. after a second update) replaces its old place in the queue
+        for (Iterator<Waiting> it = queue.iterator(); it.hasNext(); ) {
+            Waiting w = it.next();
+            if (w.server.equals(server)) {
+                closeQuietly(w.socket);
+                it.remove();
+            }
+        }
+        if (granted.containsKey(server)) {
+            // Still restarting from a previous permit; it will ask again once it is back
+            closeQuietly(socket);
+            return;
+        }
+        queue.addLast(new Waiting(server, socket));
+        try {
+            send(socket, "QUEUED " + queue.size());
+        } catch (IOException e) {
+            queue.removeLast();
+            closeQuietly(socket);
+        }
+        tick();
+    }
+
+    private void tick() {
+        long now = nanoClock.getAsLong();
+        long timeout = TimeUnit.MINUTES.toNanos(Math.max(1, cfg.restartCoordinator.returnTimeoutMinutes));
+        for (Iterator<Permit> it = granted.values().iterator(); it.hasNext(); ) {
+            Permit p = it.next();
+            if (p.back && isServing(p.server)) {
+                log.info(cfg.messages.coordinatorReleased.replace("{server}", p.server));
+                it.remove();
+            } else if (now - p.grantedAt > timeout) {
+                log.warn(cfg.messages.coordinatorTimeout.replace("{server}", p.server)
+                        .replace("{minutes}", String.valueOf(cfg.restartCoordinator.returnTimeoutMinutes)));
+                it.remove();
+            }
+        }
+        int limit = Math.max(1, cfg.restartCoordinator.maxConcurrent);
+        while (granted.size() < limit && !queue.isEmpty()) {
+            Waiting next = queue.pollFirst();
+            try {
+                send(next.socket, "GRANT");
+                granted.put(next.server, new Permit(next.server, now));
+                log.info(cfg.messages.coordinatorGranted.replace("{server}", next.server));
+            } catch (IOException e) {
+                // Backend went away while queued; skip it
+            } finally {
+                closeQuietly(next.socket);
+            }
+        }
+    }
+
+    private boolean isServing(String server) {
+        int players = status.playerCount(server);
+        // Unknown to the proxy, or nobody online to route: being back is all we can wait for
+        return players != 0 || status.totalPlayers() == 0;
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing to do
+        }
+    }
+
+    static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static final class Waiting {
+        final String server;
+        final Socket socket;
+
+        Waiting(String server, Socket socket) {
+            this.server = server;
+            this.socket = socket;
+        }
+    }
+
+    private static final class Permit {
+        final String server;
+        final long grantedAt;
+        boolean back;
+
+        Permit(String server, long grantedAt) {
+            this.server = server;
+            this.grantedAt = grantedAt;
+        }
+    }
+}
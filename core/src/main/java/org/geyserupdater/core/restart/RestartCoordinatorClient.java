@@ -0,0 +1,115 @@
+package org.geyserupdater.core.restart;
+
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.logging.LogAdapter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Backend side of {@link RestartCoordinator}: announces startup and waits for a restart permit
+ * instead of restarting as soon as an update is staged.
+ */
+public class RestartCoordinatorClient implements AutoCloseable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final long RETRY_SECONDS = 30;
+
+    private final LogAdapter log;
+    private final Config cfg;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(RestartCoordinator.daemon("GeyserUpdater-RestartClient"));
+    private final AtomicBoolean waiting = new AtomicBoolean();
+
+    public RestartCoordinatorClient(LogAdapter log, Config cfg) {
+        this.log = log;
+        this.cfg = cfg;
+    }
+
+    /** Tells the proxy this backend is (back) up. Best effort: the proxy may not be running. */
+    public void hello() {
+        executor.execute(() -> {
+            try (Socket socket = connect()) {
+                socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                authenticate(socket);
+                send(socket, "HELLO " + cfg.restartCoordinator.serverName);
+                reader(socket).readLine();
+            } catch (IOException e) {
+                // No coordinator listening; nothing is waiting for us
+            }
+        });
+    }
+
+    /**
+     * Queues for a restart permit and runs {@code onGrant} once the proxy hands it out.
+     * Retries while the proxy is unreachable. Repeated calls while already queued are ignored.
+     */
+    public void requestRestart(Runnable onGrant) {
+        if (!waiting.compareAndSet(false, true)) return;
+        executor.execute(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try (Socket socket = connect()) {
+                        authenticate(socket);
+                        send(socket, "STAGED " + cfg.restartCoordinator.serverName);
+                        BufferedReader in = reader(socket);
+                        String line;
+                        while ((line = in.readLine()) != null) {
+                            if (line.equals("GRANT")) {
+                                log.info(cfg.messages.restartGranted);
+                                onGrant.run();
+                                return;
+                            }
+                            if (line.startsWith("ERROR")) throw new IOException(line);
+                        }
+                    } catch (IOException e) {
+                        log.warn(cfg.messages.coordinatorUnreachable.replace("{error}", String.valueOf(e.getMessage())));
+                    }
+                    TimeUnit.SECONDS.sleep(RETRY_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiting.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(cfg.restartCoordinator.host, cfg.restartCoordinator.port), CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private void authenticate(Socket socket) throws IOException {
+        String secret = cfg.restartCoordinator.secret;
+        if (secret != null && !secret.isBlank()) send(socket, "AUTH " + secret);
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -1,21 +1,32 @@
 package org.geyserupdater.core.util;
 
+import org.geyserupdater.core.load.LoadThrottle;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public final class FileUtils {
+    /** Ends the name of the copy {@link #atomicMove} makes next to its destination. */
+    public static final String MOVE_TEMP_SUFFIX = ".geyserupdater.tmp";
+
     private FileUtils() {}
 
     public static String sha256(Path file) throws IOException {
+        return sha256(file, null);
+    }
+
+    public static String sha256(Path file, LoadThrottle throttle) throws IOException {
         try (InputStream in = Files.newInputStream(file)) {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] buf = new byte[8192];
+            byte[] buf = new byte[65536];
             int r;
             while ((r = in.read(buf)) != -1) {
                 md.update(buf, 0, r);
+                if (throttle != null) throttle.pace();
             }
             byte[] digest = md.digest();
             StringBuilder sb = new StringBuilder(digest.length * 2);
@@ -29,11 +40,48 @@ public final class FileUtils {
     }
 
     public static void atomicMove(Path src, Path dest) throws IOException {
-        Files.createDirectories(dest.getParent());
+        atomicMove(src, dest, FsyncPolicy.NONE);
+    }
+
+    /**
+     * Replaces {@code dest} with {@code src} in one rename. If the two are on different filesystems,
+     * {@code src} is first copied next to {@code dest} so the final step is still an atomic rename.
+     */
+    public static void atomicMove(Path src, Path dest, FsyncPolicy fsync) throws IOException {
+        Path dir = dest.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
         try {
             Files.move(src, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (AtomicMoveNotSupportedException e) {
-            Files.move(src, dest, StandardCopyOption.REPLACE_EXISTING);
+            Path sibling = Files.createTempFile(dir, "." + dest.getFileName(), MOVE_TEMP_SUFFIX);
+            try {
+                Files.copy(src, sibling, StandardCopyOption.REPLACE_EXISTING);
+                if (fsync != FsyncPolicy.NONE) force(sibling);
+                try {
+                    Files.move(sibling, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException notEvenHere) {
+                    Files.move(sibling, dest, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.deleteIfExists(src);
+            } finally {
+                Files.deleteIfExists(sibling);
+            }
+        }
+        if (fsync == FsyncPolicy.DIRECTORY) forceDirectory(dir);
+    }
+
+    public static void force(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    /** Flushes directory entries (renames) to disk. Not supported on every OS, e.g. Windows; ignored there. */
+    public static void forceDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+            // best effort
         }
     }
 }
\ No newline at end of file
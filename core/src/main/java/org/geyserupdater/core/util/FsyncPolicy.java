@@ -0,0 +1,30 @@
+package org.geyserupdater.core.util;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/** How hard to push a finished download to disk before and after it replaces the installed jar. */
+public enum FsyncPolicy {
+    /** Leave it to the OS page cache. */
+    NONE,
+    /** Force the file's contents before it is moved into place. */
+    FILE,
+    /** As FILE, and also force the destination directory so the rename itself survives a crash. */
+    DIRECTORY;
+
+    /** FILE for anything {@link #parse} does not know; the config loader warns about those. */
+    public static FsyncPolicy fromString(String value) {
+        return parse(value).orElse(FILE);
+    }
+
+    public static Optional<FsyncPolicy> parse(String value) {
+        if (value == null) return Optional.empty();
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "none": return Optional.of(NONE);
+            case "file": return Optional.of(FILE);
+            case "directory":
+            case "file+directory": return Optional.of(DIRECTORY);
+            default: return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.geyserupdater.core.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader for the download API responses. Produces maps, lists, strings,
+ * numbers (Long or Double), booleans and null.
+ */
+public final class Json {
+    private final String s;
+    private int pos;
+
+    private Json(String s) {
+        this.s = s;
+    }
+
+    public static Object parse(String json) throws IOException {
+        Json p = new Json(json);
+        Object value = p.value();
+        p.skipWhitespace();
+        if (p.pos != p.s.length()) throw p.error("Trailing data");
+        return value;
+    }
+
+    private Object value() throws IOException {
+        skipWhitespace();
+        if (pos >= s.length()) throw error("Unexpected end");
+        char c = s.charAt(pos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default: return number();
+        }
+    }
+
+    private Map<String, Object> object() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') { pos++; return map; }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') throw error("Expected key");
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            map.put(key, value());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') return map;
+            if (c != ',') throw error("Expected , or }");
+        }
+    }
+
+    private List<Object> array() throws IOException {
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') { pos++; return list; }
+        while (true) {
+            list.add(value());
+            skipWhitespace();
+            char c = next();
+            if (c == ']') return list;
+            if (c != ',') throw error("Expected , or ]");
+        }
+    }
+
+    private String string() throws IOException {
+        pos++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            char e = next();
+            switch (e) {
+                case '"': case '\\': case '/': sb.append(e); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > s.length()) throw error("Bad unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Bad unicode escape");
+                    }
+                    pos += 4;
+                    break;
+                default: throw error("Bad escape");
+            }
+        }
+    }
+
+    private Object number() throws IOException {
+        int start = pos;
+        while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+        String n = s.substring(start, pos);
+        try {
+            if (n.contains(".") || n.contains("e") || n.contains("E")) return Double.parseDouble(n);
+            return Long.parseLong(n);
+        } catch (NumberFormatException ex) {
+            throw error("Bad value");
+        }
+    }
+
+    private Object literal(String word, Object value) throws IOException {
+        if (!s.startsWith(word, pos)) throw error("Bad literal");
+        pos += word.length();
+        return value;
+    }
+
+    private void skipWhitespace() {
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+    }
+
+    private char peek() throws IOException {
+        if (pos >= s.length()) throw error("Unexpected end");
+        return s.charAt(pos);
+    }
+
+    private char next() throws IOException {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char c) throws IOException {
+        if (next() != c) throw error("Expected " + c);
+    }
+
+    private IOException error(String msg) {
+        return new IOException("Invalid JSON at " + pos + ": " + msg);
+    }
+}
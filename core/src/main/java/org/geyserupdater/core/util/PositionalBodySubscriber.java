@@ -0,0 +1,139 @@
+package org.geyserupdater.core.util;
+
+import org.geyserupdater.core.load.LoadThrottle;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes a response body into a shared file at a fixed offset with positional writes, so several
+ * byte ranges of one file can be received concurrently. Completes with the number of bytes
+ * written, or exceptionally if the body is shorter or longer than expected or the
+ * {@link TransferWatchdog} gives up on it. {@code onBytes} only hears of a range once it has arrived
+ * in full, so a range that fails and is fetched again is counted once.
+ */
+public final class PositionalBodySubscriber implements HttpResponse.BodySubscriber<Long>, TransferWatchdog.Stream {
+    private final FileChannel channel;
+    private final long offset;
+    private final long expected;
+    private final LongConsumer onBytes;
+    private final LoadThrottle throttle;
+    private final TransferWatchdog watchdog;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+    private volatile TransferWatchdog.Channel watch;
+    private long written;
+
+    public PositionalBodySubscriber(FileChannel channel, long offset, long expected, LongConsumer onBytes,
+                                    LoadThrottle throttle, TransferWatchdog watchdog) {
+        this.channel = channel;
+        this.offset = offset;
+        this.expected = expected;
+        this.onBytes = onBytes;
+        this.throttle = throttle;
+        this.watchdog = watchdog;
+    }
+
+    /** A subscriber that refuses the body without reading it, e.g. a 200 where a 206 was asked for. */
+    public static HttpResponse.BodySubscriber<Long> rejecting(IOException reason) {
+        return new HttpResponse.BodySubscriber<>() {
+            private final CompletableFuture<Long> result = CompletableFuture.failedFuture(reason);
+
+            @Override public CompletionStage<Long> getBody() { return result; }
+            @Override public void onSubscribe(Flow.Subscription s) { s.cancel(); }
+            @Override public void onNext(List<ByteBuffer> item) {}
+            @Override public void onError(Throwable t) {}
+            @Override public void onComplete() {}
+        };
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        watch = watchdog.open(this);
+        subscription = s;
+        // Aborted before the body started
+        if (result.isDone()) {
+            s.cancel();
+            watch.close();
+            return;
+        }
+        s.request(1);
+    }
+
+    /**
+     * Called by the watchdog when the range stalls or the download runs out of time, or by the
+     * downloader when another range failed. Once this returns, nothing more is written to the file.
+     */
+    @Override
+    public synchronized void abort(IOException reason) {
+        if (result.completeExceptionally(reason)) {
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+        }
+    }
+
+    /** Takes back from the watchdog what this range received, before the range is fetched again. */
+    public void discard() {
+        TransferWatchdog.Channel w = watch;
+        if (w != null) w.discard();
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        try {
+            // Holding the lock keeps abort() waiting until the writes in hand are done
+            synchronized (this) {
+                if (result.isDone()) return;
+                for (ByteBuffer b : items) {
+                    if (written + b.remaining() > expected) {
+                        throw new IOException("Server sent more than the requested " + expected + " bytes");
+                    }
+                    while (b.hasRemaining()) {
+                        int n = channel.write(b, offset + written);
+                        written += n;
+                        watch.add(n);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            subscription.cancel();
+            fail(e);
+            return;
+        }
+        // This runs on the HTTP client's threads, so a throttle pause delays the next request instead of sleeping
+        watch.pace(throttle, () -> subscription.request(1));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        fail(t);
+    }
+
+    @Override
+    public void onComplete() {
+        if (written != expected) {
+            fail(new IOException("Truncated range: got " + written + " of " + expected + " bytes"));
+        } else {
+            if (watch != null) watch.close();
+            onBytes.accept(written);
+            result.complete(written);
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (watch != null) watch.close();
+        result.completeExceptionally(t);
+    }
+}
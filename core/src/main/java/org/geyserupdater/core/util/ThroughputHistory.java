@@ -0,0 +1,41 @@
+package org.geyserupdater.core.util;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Smoothed download throughput per host, so the deadline of the next download from a host can be
+ * sized from how fast it has been rather than from a fixed guess.
+ */
+public final class ThroughputHistory {
+    // Weight of the newest sample; high enough to follow a link that got slower within a few downloads
+    private static final double ALPHA = 0.3;
+
+    private final Map<String, Double> bytesPerSecond = new ConcurrentHashMap<>();
+
+    public void record(String host, long bytes, long nanos) {
+        if (host == null || bytes <= 0 || nanos <= 0) return;
+        double sample = bytes * 1e9 / nanos;
+        bytesPerSecond.merge(host, sample, (old, s) -> old + ALPHA * (s - old));
+    }
+
+    public OptionalDouble estimate(String host) {
+        Double v = host == null ? null : bytesPerSecond.get(host);
+        return v == null ? OptionalDouble.empty() : OptionalDouble.of(v);
+    }
+
+    /**
+     * {@code factor} times as long as {@code bytes} should take at the host's usual speed, but at
+     * least {@code min}. Empty while nothing has been downloaded from the host.
+     */
+    public Optional<Duration> deadline(String host, long bytes, double factor, Duration min) {
+        OptionalDouble rate = estimate(host);
+        if (rate.isEmpty() || bytes <= 0) return Optional.empty();
+        long millis = (long) (bytes / rate.getAsDouble() * factor * 1000);
+        Duration d = Duration.ofMillis(millis);
+        return Optional.of(d.compareTo(min) < 0 ? min : d);
+    }
+}
@@ -0,0 +1,227 @@
+package org.geyserupdater.core.util;
+
+import org.geyserupdater.core.load.LoadThrottle;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Watches the streams of one download. A stream that receives fewer than {@code stallBytes} within
+ * {@code stallWindow} is aborted, and once the download as a whole runs past its deadline every
+ * stream is. Time spent paused by a {@link LoadThrottle} counts towards neither. Also reports
+ * progress at a fixed interval. Thread-safe.
+ */
+public final class TransferWatchdog implements AutoCloseable {
+    private static final long TICK_MILLIS = 250;
+
+    /** Something that can be torn down from the watchdog's thread, e.g. by closing its body. */
+    @FunctionalInterface
+    public interface Stream {
+        void abort(IOException reason);
+    }
+
+    @FunctionalInterface
+    public interface ProgressSink {
+        /** {@code total} is -1 while the length is unknown. */
+        void progress(long bytes, long total, double bytesPerSecond);
+    }
+
+    private final long stallBytes;
+    private final long stallWindowNanos;
+    private final long progressIntervalNanos;
+    private final ProgressSink sink;
+    private final ScheduledExecutorService timer;
+    private final Set<Channel> channels = ConcurrentHashMap.newKeySet();
+    private final LongAdder bytes = new LongAdder();
+    private final long start = System.nanoTime();
+    private final ScheduledFuture<?> ticker;
+    private volatile long total = -1;
+    private volatile long deadlineNanos;
+    private volatile IOException failure;
+    // Guarded by this: pauses of concurrent streams overlap, so only count time when any is paused
+    private int pausedStreams;
+    private long pauseStart;
+    private long pausedNanos;
+    private long lastReport = start;
+
+    public TransferWatchdog(ScheduledExecutorService timer, long stallBytes, Duration stallWindow,
+                            Duration progressInterval, ProgressSink sink) {
+        this.stallBytes = stallBytes;
+        this.stallWindowNanos = stallWindow.toNanos();
+        this.progressIntervalNanos = progressInterval.toNanos();
+        this.sink = sink;
+        this.timer = timer;
+        this.ticker = timer.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Sets the download's length once known, and the deadline derived from it (null for none). */
+    public void expect(long total, Duration deadline) {
+        this.total = total;
+        this.deadlineNanos = deadline == null ? 0 : deadline.toNanos();
+    }
+
+    public Channel open(Stream stream) {
+        Channel c = new Channel(stream);
+        channels.add(c);
+        return c;
+    }
+
+    public long transferred() {
+        return bytes.sum();
+    }
+
+    /** Time since the download started, not counting throttle pauses. */
+    public synchronized long activeNanos() {
+        long now = System.nanoTime();
+        long paused = pausedNanos + (pausedStreams > 0 ? now - pauseStart : 0);
+        return now - start - paused;
+    }
+
+    /** Why the download was aborted for running past its deadline, or null. */
+    public IOException failure() {
+        return failure;
+    }
+
+    private synchronized void paused(boolean paused) {
+        if (paused) {
+            if (pausedStreams++ == 0) pauseStart = System.nanoTime();
+        } else if (--pausedStreams == 0) {
+            pausedNanos += System.nanoTime() - pauseStart;
+        }
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            long active = activeNanos();
+            if (failure == null && deadlineNanos > 0 && active > deadlineNanos) {
+                failure = new IOException("Download did not finish within " + TimeUnit.NANOSECONDS.toSeconds(deadlineNanos)
+                        + " s (" + transferred() + " of " + total + " bytes)");
+                channels.forEach(c -> c.abort(failure));
+                return;
+            }
+            channels.forEach(c -> c.check(now));
+            if (progressIntervalNanos > 0 && now - lastReport >= progressIntervalNanos) {
+                lastReport = now;
+                long done = transferred();
+                sink.progress(done, total, active > 0 ? done * 1e9 / active : 0);
+            }
+        } catch (RuntimeException ignored) {
+            // A failing progress sink must not stop the watchdog
+        }
+    }
+
+    @Override
+    public void close() {
+        ticker.cancel(false);
+        channels.clear();
+    }
+
+    /** One stream of the download, e.g. a byte range. Written to by a single thread at a time. */
+    public final class Channel implements AutoCloseable {
+        private final Stream stream;
+        private volatile long received;
+        private volatile boolean pausing;
+        private volatile IOException failure;
+        private boolean discarded; // guarded by this
+        // Only touched by the ticker: when the stream last got stallBytes further, and how far it was then
+        private long markTime = System.nanoTime();
+        private long markBytes;
+
+        private Channel(Stream stream) {
+            this.stream = stream;
+        }
+
+        public synchronized void add(long n) {
+            if (discarded) return;
+            received += n;
+            bytes.add(n);
+        }
+
+        /** Takes back what this stream received and stops watching it, e.g. for a range that is fetched again. */
+        public synchronized void discard() {
+            if (discarded) return;
+            discarded = true;
+            bytes.add(-received);
+            close();
+        }
+
+        /** Runs the throttle; the stall clock starts over once it lets the stream continue. */
+        public void pace(LoadThrottle throttle) throws InterruptedIOException {
+            if (!throttle.isEnabled()) return;
+            pausing = true;
+            paused(true);
+            try {
+                throttle.pace();
+            } finally {
+                paused(false);
+                pausing = false;
+            }
+        }
+
+        /**
+         * Like {@link #pace(LoadThrottle)}, but waits on the watchdog's timer instead of the calling
+         * thread and then runs {@code resume}, which is how a body subscriber delays its next
+         * {@code request(1)}. {@code resume} runs on the calling thread when there is nothing to wait for.
+         */
+        public void pace(LoadThrottle throttle, Runnable resume) {
+            long wait = failure == null ? throttle.pauseMillis() : 0;
+            if (wait == 0) {
+                if (pausing) {
+                    pausing = false;
+                    paused(false);
+                }
+                resume.run();
+                return;
+            }
+            if (!pausing) {
+                pausing = true;
+                paused(true);
+            }
+            try {
+                timer.schedule(() -> pace(throttle, resume), wait, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shut down with the service; nothing will read this stream any more
+                pausing = false;
+                paused(false);
+                abort(new InterruptedIOException("Interrupted while throttled"));
+            }
+        }
+
+        /** Why the watchdog aborted this stream, or null. */
+        public IOException failure() {
+            return failure;
+        }
+
+        private void check(long now) {
+            long got = received - markBytes;
+            if (pausing || got >= stallBytes) {
+                markTime = now;
+                markBytes = received;
+            } else if (now - markTime >= stallWindowNanos) {
+                abort(new IOException("Download stalled: " + got + " bytes in the last "
+                        + TimeUnit.NANOSECONDS.toSeconds(stallWindowNanos) + " s"));
+            }
+        }
+
+        private void abort(IOException reason) {
+            if (failure != null) return;
+            failure = reason;
+            channels.remove(this);
+            stream.abort(reason);
+        }
+
+        @Override
+        public void close() {
+            channels.remove(this);
+        }
+    }
+}
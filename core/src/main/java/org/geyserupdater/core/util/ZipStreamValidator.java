@@ -0,0 +1,414 @@
+package org.geyserupdater.core.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Checks the structure of a zip (jar) as its bytes go by, one chunk at a time: every local header,
+ * each entry's CRC-32 and sizes (deflated entries are inflated into a scratch buffer), and that the
+ * central directory and end record describe exactly the entries that came before them. Keeps a few
+ * numbers per entry, never the file itself. Not thread-safe: feed the chunks in order.
+ */
+public final class ZipStreamValidator implements AutoCloseable {
+    private static final int LOCAL_SIG = 0x04034b50;
+    private static final int CENTRAL_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int DESCRIPTOR_SIG = 0x08074b50;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_DESCRIPTOR = 1 << 3;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAGIC32 = 0xFFFFFFFFL;
+    private static final int MAGIC16 = 0xFFFF;
+    // The zip64 end record is fixed-size apart from an extensible data block nobody uses; refuse silly sizes
+    private static final long MAX_ZIP64_END = 64 * 1024;
+
+    private enum State {
+        SIGNATURE, LOCAL_HEADER, LOCAL_NAME, STORED_DATA, DEFLATED_DATA, DESCRIPTOR,
+        CENTRAL_HEADER, CENTRAL_NAME, ZIP64_END_SIZE, ZIP64_END, ZIP64_LOCATOR, END, COMMENT, DONE
+    }
+
+    private final CRC32 crc = new CRC32();
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] scratch = new byte[65536];
+    // Local entries by header offset, so the central directory may list them in any order
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private State state;
+    private byte[] buf = new byte[64];
+    private int need;
+    private int have;
+    private long position;
+    private long recordStart;
+    private Entry entry;
+    // Length of the file name at the start of buf while a LOCAL_NAME or CENTRAL_NAME is read
+    private int nameLength;
+    private int extraLength;
+    private long remaining;
+    private int matched;
+    private long centralStart = -1;
+    private long centralEnd = -1;
+    private long zip64EndStart = -1;
+    private long zip64Entries = -1;
+    private long zip64CentralSize = -1;
+    private long zip64CentralOffset = -1;
+
+    public ZipStreamValidator() {
+        expect(State.SIGNATURE, 4);
+    }
+
+    public void update(byte[] b, int off, int len) throws ZipException {
+        int end = off + len;
+        while (off < end) {
+            int n;
+            switch (state) {
+                case DONE:
+                    throw new ZipException("Data after the end of the central directory");
+                case STORED_DATA:
+                    n = (int) Math.min(end - off, remaining);
+                    crc.update(b, off, n);
+                    remaining -= n;
+                    position += n;
+                    off += n;
+                    if (remaining == 0) entryDataDone();
+                    break;
+                case DEFLATED_DATA:
+                    n = inflate(b, off, end - off);
+                    position += n;
+                    off += n;
+                    if (inflater.finished()) entryDataDone();
+                    break;
+                case COMMENT:
+                    n = (int) Math.min(end - off, remaining);
+                    remaining -= n;
+                    position += n;
+                    off += n;
+                    if (remaining == 0) state = State.DONE;
+                    break;
+                default:
+                    n = Math.min(end - off, need - have);
+                    System.arraycopy(b, off, buf, have, n);
+                    have += n;
+                    position += n;
+                    off += n;
+                    if (have == need) complete();
+            }
+        }
+    }
+
+    /** Call once the last chunk has been fed; fails if the file ended before its end record. */
+    public void finish() throws ZipException {
+        if (state != State.DONE) {
+            throw new ZipException("Truncated at byte " + position + " (" + describe(state) + ")");
+        }
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    private void expect(State next, int bytes) {
+        state = next;
+        if (next == State.SIGNATURE) recordStart = position;
+        if (buf.length < bytes) buf = new byte[bytes];
+        need = bytes;
+        have = 0;
+    }
+
+    private void complete() throws ZipException {
+        switch (state) {
+            case SIGNATURE -> signature(le32(0));
+            case LOCAL_HEADER -> {
+                entry = new Entry(recordStart);
+                entry.flags = le16(2);
+                entry.method = le16(4);
+                entry.dosTime = le32(6);
+                entry.crc = le32(10) & MAGIC32;
+                entry.compressed = le32(14) & MAGIC32;
+                entry.size = le32(18) & MAGIC32;
+                expectName(State.LOCAL_NAME, le16(22), le16(24), 0);
+            }
+            case LOCAL_NAME -> startData();
+            case DESCRIPTOR -> descriptor();
+            case CENTRAL_HEADER -> {
+                entry = new Entry(le32(38) & MAGIC32);
+                entry.flags = le16(4);
+                entry.method = le16(6);
+                entry.dosTime = le32(8);
+                entry.crc = le32(12) & MAGIC32;
+                entry.compressed = le32(16) & MAGIC32;
+                entry.size = le32(20) & MAGIC32;
+                expectName(State.CENTRAL_NAME, le16(24), le16(26), le16(28));
+            }
+            case CENTRAL_NAME -> centralEntry();
+            case ZIP64_END_SIZE -> {
+                long size = le64(0);
+                if (size < 44 || size > MAX_ZIP64_END) throw new ZipException("Bad zip64 end record size " + size);
+                expect(State.ZIP64_END, (int) size);
+            }
+            case ZIP64_END -> {
+                zip64Entries = le64(20);
+                zip64CentralSize = le64(28);
+                zip64CentralOffset = le64(36);
+                expect(State.SIGNATURE, 4);
+            }
+            case ZIP64_LOCATOR -> {
+                if (le64(4) != zip64EndStart) throw new ZipException("Zip64 locator points to the wrong offset");
+                expect(State.SIGNATURE, 4);
+            }
+            case END -> end();
+            default -> throw new IllegalStateException(state.name());
+        }
+    }
+
+    // The variable part of a header: name, extra fields and (central directory only) comment
+    private void expectName(State next, int name, int extra, int comment) throws ZipException {
+        nameLength = name;
+        extraLength = extra;
+        expect(next, name + extra + comment);
+        if (need == 0) complete();
+    }
+
+    private void signature(int sig) throws ZipException {
+        if (centralStart >= 0 && centralEnd < 0 && sig != CENTRAL_SIG) {
+            centralEnd = recordStart;
+        }
+        switch (sig) {
+            case LOCAL_SIG -> {
+                if (centralStart >= 0) throw new ZipException("Local header after the central directory");
+                expect(State.LOCAL_HEADER, 26);
+            }
+            case CENTRAL_SIG -> {
+                if (centralEnd >= 0) throw new ZipException("Central directory is not contiguous");
+                if (centralStart < 0) centralStart = recordStart;
+                expect(State.CENTRAL_HEADER, 42);
+            }
+            case ZIP64_END_SIG -> {
+                zip64EndStart = recordStart;
+                expect(State.ZIP64_END_SIZE, 8);
+            }
+            case ZIP64_LOCATOR_SIG -> expect(State.ZIP64_LOCATOR, 16);
+            case END_SIG -> expect(State.END, 18);
+            default -> throw new ZipException(recordStart == 0
+                    ? "Not a zip file"
+                    : String.format("Unexpected signature 0x%08x at byte %d", sig, recordStart));
+        }
+    }
+
+    private void startData() throws ZipException {
+        entry.nameHash = nameHash();
+        entry.name = name();
+        zip64Extra(entry, false);
+        if ((entry.flags & FLAG_ENCRYPTED) != 0) throw new ZipException("Encrypted entry " + entry.name);
+        crc.reset();
+        switch (entry.method) {
+            case STORED -> {
+                if ((entry.flags & FLAG_DESCRIPTOR) != 0) {
+                    throw new ZipException("Stored entry " + entry.name + " has no size in its header");
+                }
+                if (entry.compressed != entry.size) throw new ZipException("Size mismatch in " + entry.name);
+                remaining = entry.compressed;
+                state = State.STORED_DATA;
+                if (remaining == 0) entryDataDone();
+            }
+            case DEFLATED -> {
+                inflater.reset();
+                state = State.DEFLATED_DATA;
+            }
+            default -> throw new ZipException("Unsupported compression method " + entry.method + " in " + entry.name);
+        }
+    }
+
+    // Returns how many of the given bytes belonged to the entry's deflate stream; the caller checks finished()
+    private int inflate(byte[] b, int off, int len) throws ZipException {
+        boolean sized = (entry.flags & FLAG_DESCRIPTOR) == 0;
+        if (sized) {
+            // Never let the inflater run into the next header
+            len = (int) Math.min(len, entry.compressed - inflater.getBytesRead());
+        }
+        inflater.setInput(b, off, len);
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(scratch);
+                crc.update(scratch, 0, n);
+                // The final block may end the stream without producing output
+                if (n > 0 || inflater.finished()) continue;
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Deflate data of " + entry.name + " needs a preset dictionary");
+                }
+                if (sized && inflater.getBytesRead() == entry.compressed) {
+                    throw new ZipException("Deflate data of " + entry.name + " ends early");
+                }
+                return len;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt deflate data in " + entry.name + ": " + e.getMessage());
+        }
+        return len - inflater.getRemaining();
+    }
+
+    private void entryDataDone() throws ZipException {
+        if ((entry.flags & FLAG_DESCRIPTOR) != 0) {
+            expect(State.DESCRIPTOR, 4);
+        } else {
+            verifyEntry();
+        }
+    }
+
+    // The signature of a data descriptor is optional, so its length is only known after four bytes
+    private void descriptor() throws ZipException {
+        int fields = entry.zip64 ? 20 : 12;
+        if (need == 4) {
+            expectMore(le32(0) == DESCRIPTOR_SIG ? 4 + fields : fields);
+            return;
+        }
+        int at = need - fields;
+        entry.crc = le32(at) & MAGIC32;
+        entry.compressed = entry.zip64 ? le64(at + 4) : le32(at + 4) & MAGIC32;
+        entry.size = entry.zip64 ? le64(at + 12) : le32(at + 8) & MAGIC32;
+        verifyEntry();
+    }
+
+    private void expectMore(int bytes) {
+        if (buf.length < bytes) {
+            byte[] grown = new byte[bytes];
+            System.arraycopy(buf, 0, grown, 0, have);
+            buf = grown;
+        }
+        need = bytes;
+    }
+
+    private void verifyEntry() throws ZipException {
+        long compressed = entry.method == DEFLATED ? inflater.getBytesRead() : entry.compressed;
+        long size = entry.method == DEFLATED ? inflater.getBytesWritten() : entry.compressed;
+        if (compressed != entry.compressed || size != entry.size) {
+            throw new ZipException("Size mismatch in " + entry.name);
+        }
+        if (crc.getValue() != entry.crc) throw new ZipException("CRC-32 mismatch in " + entry.name);
+        entry.name = null;
+        entries.put(entry.offset, entry);
+        entry = null;
+        expect(State.SIGNATURE, 4);
+    }
+
+    private void centralEntry() throws ZipException {
+        Entry c = entry;
+        entry = null;
+        c.nameHash = nameHash();
+        zip64Extra(c, true);
+
+        Entry local = entries.get(c.offset);
+        if (local == null || local.nameHash != c.nameHash) {
+            throw new ZipException("Central directory entry " + name() + " has no matching local header");
+        }
+        if (local.method != c.method || local.dosTime != c.dosTime || local.crc != c.crc
+                || local.compressed != c.compressed || local.size != c.size) {
+            throw new ZipException("Central directory disagrees with the local header of " + name());
+        }
+        if (local.matched) throw new ZipException("Entry " + name() + " listed twice in the central directory");
+        local.matched = true;
+        matched++;
+        expect(State.SIGNATURE, 4);
+    }
+
+    private void end() throws ZipException {
+        long total = le16(6) == MAGIC16 && zip64Entries >= 0 ? zip64Entries : le16(6);
+        long size = (le32(8) & MAGIC32) == MAGIC32 && zip64CentralSize >= 0 ? zip64CentralSize : le32(8) & MAGIC32;
+        long offset = (le32(12) & MAGIC32) == MAGIC32 && zip64CentralOffset >= 0 ? zip64CentralOffset : le32(12) & MAGIC32;
+        long start = centralStart >= 0 ? centralStart : recordStart;
+        long stop = centralEnd >= 0 ? centralEnd : recordStart;
+        if (matched != entries.size() || total != entries.size()) {
+            throw new ZipException("Central directory lists " + total + " entries, the file has " + entries.size());
+        }
+        if (offset != start || size != stop - start) {
+            throw new ZipException("End record does not point at the central directory");
+        }
+        remaining = le16(16);
+        state = remaining == 0 ? State.DONE : State.COMMENT;
+    }
+
+    // Zip64 sizes and offset replace the 32-bit fields that are set to 0xFFFFFFFF, in this order
+    private void zip64Extra(Entry e, boolean central) throws ZipException {
+        int at = nameLength;
+        int to = nameLength + extraLength;
+        while (at + 4 <= to) {
+            int id = le16(at);
+            int len = le16(at + 2);
+            if (at + 4 + len > to) throw new ZipException("Malformed extra field");
+            if (id == 0x0001) {
+                int p = at + 4;
+                int fieldsEnd = p + len;
+                if (e.size == MAGIC32 && p + 8 <= fieldsEnd) { e.size = le64(p); p += 8; }
+                if (e.compressed == MAGIC32 && p + 8 <= fieldsEnd) { e.compressed = le64(p); p += 8; }
+                if (central && e.offset == MAGIC32 && p + 8 <= fieldsEnd) { e.offset = le64(p); }
+                e.zip64 = true;
+            }
+            at += 4 + len;
+        }
+    }
+
+    private int nameHash() {
+        int h = 1;
+        for (int i = 0; i < nameLength; i++) h = 31 * h + buf[i];
+        return h;
+    }
+
+    private String name() {
+        return new String(buf, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    private int le16(int at) {
+        return le16(buf, at);
+    }
+
+    private int le32(int at) {
+        return le32(buf, at);
+    }
+
+    private long le64(int at) {
+        return (le32(buf, at) & MAGIC32) | ((long) le32(buf, at + 4) << 32);
+    }
+
+    private static int le16(byte[] b, int at) {
+        return (b[at] & 0xFF) | (b[at + 1] & 0xFF) << 8;
+    }
+
+    private static int le32(byte[] b, int at) {
+        return le16(b, at) | le16(b, at + 2) << 16;
+    }
+
+    private static String describe(State s) {
+        return switch (s) {
+            case STORED_DATA, DEFLATED_DATA, DESCRIPTOR -> "inside an entry";
+            case CENTRAL_HEADER, CENTRAL_NAME -> "inside the central directory";
+            case COMMENT -> "inside the archive comment";
+            default -> "before the end record";
+        };
+    }
+
+    private static final class Entry {
+        long offset;
+        int flags;
+        int method;
+        int dosTime;
+        long crc;
+        long compressed;
+        long size;
+        int nameHash;
+        boolean zip64;
+        boolean matched;
+        // Only while the entry's data is being read, for error messages
+        String name;
+
+        Entry(long offset) {
+            this.offset = offset;
+        }
+    }
+}
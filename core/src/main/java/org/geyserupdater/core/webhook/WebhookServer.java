@@ -0,0 +1,127 @@
+package org.geyserupdater.core.webhook;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.logging.LogAdapter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Accepts {@code POST} requests carrying {@code Authorization: Bearer <secret>} and asks the
+ * plugin for an immediate check. Pushes that arrive before the requested check has started are
+ * folded into it, so a burst of notifications runs one check.
+ */
+public class WebhookServer implements AutoCloseable {
+    private final LogAdapter log;
+    private final Config cfg;
+    private final Runnable trigger;
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private String path;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public WebhookServer(LogAdapter log, Config cfg, Runnable trigger) {
+        this.log = log;
+        this.cfg = cfg;
+        this.trigger = trigger;
+    }
+
+    public synchronized void start() throws IOException {
+        Config.Webhook c = cfg.webhook;
+        if (c.secret == null || c.secret.isBlank()) {
+            // Never expose an unauthenticated trigger
+            throw new IOException(cfg.messages.webhookNoSecret);
+        }
+        path = c.path.startsWith("/") ? c.path : "/" + c.path;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(c.host), c.port), 0);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "GeyserUpdater-Webhook");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+        server.start();
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    public String path() {
+        return path;
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            // Contexts match by prefix; only the exact path is ours
+            if (!ex.getRequestURI().getPath().equals(path)) {
+                respond(ex, 404, "{\"status\":\"not found\"}");
+                return;
+            }
+            if (!"POST".equals(ex.getRequestMethod())) {
+                ex.getResponseHeaders().set("Allow", "POST");
+                respond(ex, 405, "{\"status\":\"method not allowed\"}");
+                return;
+            }
+            if (!authorized(ex.getRequestHeaders().getFirst("Authorization"))) {
+                ex.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                respond(ex, 401, "{\"status\":\"unauthorized\"}");
+                return;
+            }
+            if (!queued.compareAndSet(false, true)) {
+                respond(ex, 202, "{\"status\":\"coalesced\"}");
+                return;
+            }
+            log.info(cfg.messages.webhookTriggered.replace("{remote}", String.valueOf(ex.getRemoteAddress().getAddress().getHostAddress())));
+            try {
+                trigger.run();
+            } catch (RuntimeException e) {
+                // No check will start for this push (e.g. the scheduler refused it while disabling),
+                // so it must not keep later pushes coalescing into nothing
+                queued.set(false);
+                log.warn(cfg.messages.webhookTriggerFailed.replace("{error}", String.valueOf(e.getMessage())));
+                respond(ex, 503, "{\"status\":\"unavailable\"}");
+                return;
+            }
+            respond(ex, 202, "{\"status\":\"queued\"}");
+        }
+    }
+
+    /** Call when the requested check starts; later pushes queue a new one. */
+    public void checkStarted() {
+        queued.set(false);
+    }
+
+    private boolean authorized(String header) {
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) return false;
+        byte[] given = header.substring(7).trim().getBytes(StandardCharsets.UTF_8);
+        byte[] expected = cfg.webhook.secret.getBytes(StandardCharsets.UTF_8);
+        // Constant time, so the secret cannot be guessed byte by byte from response timing
+        return MessageDigest.isEqual(given, expected);
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -0,0 +1,68 @@
+package org.geyserupdater.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CircuitBreakerTest {
+    private final Config.CircuitBreaker settings = new Config.CircuitBreaker();
+    private final CircuitBreaker breaker = new CircuitBreaker(() -> settings);
+
+    @Test
+    void oneCheckCountsAsOneFailure() {
+        settings.failureThreshold = 3;
+        CircuitBreaker.Round check = breaker.round();
+        for (int i = 0; i < 10; i++) {
+            check.onFailure("HTTP 503");
+        }
+        check.finish();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void opensAfterThresholdFailedChecks() {
+        settings.failureThreshold = 3;
+        failedCheck("reset");
+        failedCheck("reset");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        CircuitBreaker.Round third = breaker.round();
+        third.onFailure("reset");
+        third.onFailure("timeout");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals("timeout", breaker.cachedFailure().orElseThrow());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void mixedCheckCountsAsFailure() {
+        settings.failureThreshold = 2;
+        for (int i = 0; i < 2; i++) {
+            // One project's endpoint fails, another's works: the check still failed
+            CircuitBreaker.Round check = breaker.round();
+            check.onSuccess();
+            check.onFailure("HTTP 503");
+            check.onSuccess();
+            check.finish();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void cleanCheckResetsTheCount() {
+        settings.failureThreshold = 2;
+        failedCheck("reset");
+        CircuitBreaker.Round clean = breaker.round();
+        clean.onSuccess();
+        clean.onSuccess();
+        clean.finish();
+        failedCheck("reset");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    private void failedCheck(String error) {
+        CircuitBreaker.Round check = breaker.round();
+        check.onFailure(error);
+        check.finish();
+    }
+}
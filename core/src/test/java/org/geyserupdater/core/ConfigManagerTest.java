@@ -0,0 +1,45 @@
+package org.geyserupdater.core;
+
+import org.geyserupdater.core.logging.LogAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigManagerTest {
+    @TempDir
+    Path dir;
+
+    private final List<String> warnings = new ArrayList<>();
+
+    @Test
+    void unknownFsyncWarnsAndFallsBackToFile() throws IOException {
+        Files.writeString(dir.resolve("config.yml"), "staging:\n  fsync: dir\n");
+        Config cfg = load();
+        assertEquals("file", cfg.staging.fsync);
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).contains("\"dir\""), warnings.get(0));
+    }
+
+    @Test
+    void knownFsyncIsKeptQuietly() throws IOException {
+        Files.writeString(dir.resolve("config.yml"), "staging:\n  fsync: Directory\n");
+        assertEquals("Directory", load().staging.fsync);
+        assertTrue(warnings.isEmpty(), warnings.toString());
+    }
+
+    private Config load() {
+        return new ConfigManager(dir, new LogAdapter() {
+            @Override public void info(String msg) {}
+            @Override public void warn(String msg) { warnings.add(msg); }
+            @Override public void error(String msg, Throwable t) {}
+        }).loadOrCreateDefault();
+    }
+}
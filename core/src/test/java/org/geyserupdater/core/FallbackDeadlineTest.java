@@ -0,0 +1,26 @@
+package org.geyserupdater.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The first download from a host has no throughput history, but still needs a deadline. */
+class FallbackDeadlineTest {
+    @Test
+    void scalesWithLength() {
+        Duration small = UpdaterService.fallbackDeadline(64 * 1024);
+        Duration jar = UpdaterService.fallbackDeadline(40L << 20);
+        assertEquals(Duration.ofSeconds(62), small);
+        // A 40 MiB jar at 32 KiB/s, plus the minimum
+        assertEquals(Duration.ofSeconds(60 + 1280), jar);
+    }
+
+    @Test
+    void unknownLengthStillEnds() {
+        Duration d = UpdaterService.fallbackDeadline(-1);
+        assertTrue(d.compareTo(Duration.ZERO) > 0 && d.compareTo(Duration.ofHours(1)) <= 0, d.toString());
+    }
+}
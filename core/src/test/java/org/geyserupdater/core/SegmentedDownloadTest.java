@@ -0,0 +1,54 @@
+package org.geyserupdater.core;
+
+import org.geyserupdater.core.harness.FaultProfile;
+import org.geyserupdater.core.harness.StubDownloadServer;
+import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.util.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/** Byte ranges are only faster than one stream when each has a TCP connection of its own. */
+class SegmentedDownloadTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void rangesUseOneHttp11ConnectionEach() throws Exception {
+        Config cfg = new Config();
+        cfg.download.segments = 4;
+        try (StubDownloadServer server = new StubDownloadServer(FaultProfile.none());
+             UpdaterService service = new UpdaterService(new NoLog(), cfg)) {
+            server.start();
+            cfg.download.baseUrl = server.baseUrl();
+            server.publish("geyser", 1, StubDownloadServer.jar(4 * 1024 * 1024, 1), "spigot");
+
+            Project geyser = cfg.targets.enabledFor(Platform.SPIGOT).stream()
+                    .filter(p -> p.apiName().equals("geyser")).findFirst().orElseThrow();
+            Map<String, BuildInfo> builds = service.fetchBuilds(List.of(geyser));
+            Path target = Files.createFile(dir.resolve("geyser.jar"));
+            service.download(geyser, builds.get("geyser"), "spigot", target);
+
+            assertEquals(server.sha256Of("geyser"), FileUtils.sha256(target));
+            List<StubDownloadServer.RangeRequest> ranges = server.rangeRequests();
+            assertEquals(4, ranges.size());
+            // Offering h2c (or h2 over TLS) would let the client multiplex every range over one connection
+            assertFalse(ranges.stream().anyMatch(r -> r.upgrade), "a range request offered an HTTP/2 upgrade");
+            assertEquals(4, ranges.stream().map(r -> r.clientPort).collect(Collectors.toSet()).size());
+        }
+    }
+
+    private static final class NoLog implements LogAdapter {
+        @Override public void info(String msg) {}
+        @Override public void warn(String msg) {}
+        @Override public void error(String msg, Throwable t) {}
+    }
+}
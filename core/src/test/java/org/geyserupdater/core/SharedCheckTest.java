@@ -0,0 +1,84 @@
+package org.geyserupdater.core;
+
+import org.geyserupdater.core.harness.FaultProfile;
+import org.geyserupdater.core.harness.StubDownloadServer;
+import org.geyserupdater.core.logging.LogAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedCheckTest {
+    @TempDir
+    Path plugins;
+
+    @Test
+    void concurrentChecksOfOneFolderDownloadOnce() throws Exception {
+        Config cfg = new Config();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try (StubDownloadServer server = new StubDownloadServer(FaultProfile.none().latency(200));
+             UpdaterService service = new UpdaterService(new NoLog(), cfg)) {
+            server.start();
+            cfg.download.baseUrl = server.baseUrl();
+            server.publish("geyser", 2, StubDownloadServer.jar(256 * 1024, 2), "spigot");
+            server.publish("floodgate", 2, StubDownloadServer.jar(256 * 1024, 3), "spigot");
+            Files.write(plugins.resolve("Geyser-Spigot.jar"), StubDownloadServer.jar(256 * 1024, 4));
+            Files.write(plugins.resolve("floodgate-spigot.jar"), StubDownloadServer.jar(256 * 1024, 5));
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<UpdaterService.UpdateOutcome>>> checks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                checks.add(pool.submit(() -> {
+                    start.await();
+                    return service.checkAndUpdate(Platform.SPIGOT, plugins);
+                }));
+            }
+            start.countDown();
+            List<UpdaterService.UpdateOutcome> first = checks.get(0).get();
+            for (Future<List<UpdaterService.UpdateOutcome>> check : checks) {
+                assertSame(first, check.get());
+            }
+            assertTrue(first.stream().allMatch(o -> o.updated), first.toString());
+            assertEquals(server.jarSize("geyser") + server.jarSize("floodgate"), server.jarBytesServed());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void laterCheckRunsAgain() throws Exception {
+        Config cfg = new Config();
+        try (StubDownloadServer server = new StubDownloadServer(FaultProfile.none());
+             UpdaterService service = new UpdaterService(new NoLog(), cfg)) {
+            server.start();
+            cfg.download.baseUrl = server.baseUrl();
+            server.publish("geyser", 1, StubDownloadServer.jar(64 * 1024, 1), "spigot");
+            server.publish("floodgate", 1, StubDownloadServer.jar(64 * 1024, 2), "spigot");
+            Files.write(plugins.resolve("Geyser-Spigot.jar"), new byte[0]);
+            Files.write(plugins.resolve("floodgate-spigot.jar"), new byte[0]);
+
+            List<UpdaterService.UpdateOutcome> first = service.checkAndUpdate(Platform.SPIGOT, plugins);
+            int requests = server.requests();
+            List<UpdaterService.UpdateOutcome> second = service.checkAndUpdate(Platform.SPIGOT, plugins);
+            assertTrue(first != second && server.requests() > requests, "a check after the last one finished must not reuse it");
+            assertTrue(second.stream().allMatch(o -> o.skippedNoChange), second.toString());
+        }
+    }
+
+    private static final class NoLog implements LogAdapter {
+        @Override public void info(String msg) {}
+        @Override public void warn(String msg) {}
+        @Override public void error(String msg, Throwable t) {}
+    }
+}
@@ -0,0 +1,167 @@
+package org.geyserupdater.core.cli;
+
+import org.geyserupdater.core.Platform;
+import org.geyserupdater.core.harness.FaultProfile;
+import org.geyserupdater.core.harness.StubDownloadServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeadlessUpdaterTest {
+    @TempDir
+    Path dir;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    void parsesServerDirAndPlatform() throws Exception {
+        Path server = Files.createDirectory(dir.resolve("lobby"));
+        HeadlessUpdater.Server parsed = HeadlessUpdater.Server.parse(server + ":velocity");
+        assertEquals(server, parsed.dir);
+        assertEquals(Platform.VELOCITY, parsed.platform);
+        assertEquals(server.resolve("plugins"), parsed.pluginsDir());
+
+        // The last colon separates, so a path that contains one still parses
+        Path colon = Files.createDirectory(dir.resolve("a:b"));
+        assertEquals(colon, HeadlessUpdater.Server.parse(colon + ":SPIGOT").dir);
+    }
+
+    @Test
+    void rejectsMalformedServerArguments() throws Exception {
+        Path server = Files.createDirectory(dir.resolve("lobby"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessUpdater.Server.parse(server.toString()));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessUpdater.Server.parse(server + ":"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessUpdater.Server.parse(":spigot"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessUpdater.Server.parse(server + ":forge"));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessUpdater.Server.parse(dir.resolve("missing") + ":spigot"));
+    }
+
+    @Test
+    void badUsageExitsWithTwo() throws Exception {
+        Path server = Files.createDirectory(dir.resolve("lobby"));
+        assertEquals(HeadlessUpdater.EXIT_USAGE, run());
+        assertEquals(HeadlessUpdater.EXIT_USAGE, run("--parallel"));
+        assertEquals(HeadlessUpdater.EXIT_USAGE, run("--parallel", "many", server + ":spigot"));
+        assertEquals(HeadlessUpdater.EXIT_USAGE, run(server + ":forge"));
+        assertEquals(HeadlessUpdater.EXIT_USAGE, run("--config", dir.resolve("missing").toString(), server + ":spigot"));
+        assertTrue(stderr().contains("Usage:"), stderr());
+        assertEquals("", stdout());
+    }
+
+    @Test
+    void helpExitsWithZero() {
+        assertEquals(HeadlessUpdater.EXIT_OK, run("--help"));
+        assertTrue(stdout().startsWith("Usage:"), stdout());
+    }
+
+    @Test
+    void updatesEveryServerFromOneDownloadPerBuild() throws Exception {
+        try (StubDownloadServer stub = new StubDownloadServer(FaultProfile.none())) {
+            stub.start();
+            byte[] geyser = StubDownloadServer.jar(128 * 1024, 1);
+            byte[] floodgate = StubDownloadServer.jar(128 * 1024, 2);
+            stub.publish("geyser", 7, geyser, "spigot");
+            stub.publish("floodgate", 7, floodgate, "spigot");
+            Path config = writeConfig(stub.baseUrl());
+
+            List<Path> servers = List.of(spigotServer("a"), spigotServer("b"), spigotServer("c"));
+            String[] args = servers.stream().map(s -> s + ":spigot").toArray(String[]::new);
+            int exit = run(concat(new String[] {"--config", config.toString(), "--parallel", "2"}, args));
+
+            assertEquals(HeadlessUpdater.EXIT_OK, exit, stderr());
+            for (Path server : servers) {
+                assertArrayEquals(geyser, Files.readAllBytes(server.resolve("plugins/Geyser-Spigot.jar")));
+                assertArrayEquals(floodgate, Files.readAllBytes(server.resolve("plugins/floodgate-spigot.jar")));
+            }
+            String[] lines = stdout().strip().split("\\R");
+            assertEquals(servers.size() * 2, lines.length, stdout());
+            assertTrue(Arrays.stream(lines).allMatch(l -> l.contains("\"status\":\"updated\"") && l.contains("\"build\":7")), stdout());
+            assertEquals(stub.jarSize("geyser") + stub.jarSize("floodgate"), stub.jarBytesServed());
+
+            // A second run finds every server current
+            out.reset();
+            assertEquals(HeadlessUpdater.EXIT_OK, run(concat(new String[] {"--config", config.toString()}, args)), stderr());
+            assertTrue(Arrays.stream(stdout().strip().split("\\R")).allMatch(l -> l.contains("\"status\":\"upToDate\"")), stdout());
+        }
+    }
+
+    @Test
+    void anyFailedTargetExitsWithOne() throws Exception {
+        try (StubDownloadServer stub = new StubDownloadServer(FaultProfile.none())) {
+            stub.start();
+            // No floodgate build published, so that target fails while geyser still updates
+            stub.publish("geyser", 3, StubDownloadServer.jar(64 * 1024, 3), "spigot");
+            Path config = writeConfig(stub.baseUrl());
+            Path server = spigotServer("a");
+
+            assertEquals(HeadlessUpdater.EXIT_FAILED, run("--config", config.toString(), server + ":spigot"));
+            assertTrue(stdout().contains("\"project\":\"floodgate\",\"status\":\"failed\""), stdout());
+            assertTrue(stdout().contains("\"project\":\"geyser\",\"status\":\"updated\""), stdout());
+        }
+    }
+
+    @Test
+    void leavesConfigFolderAloneAndCleansStaging() throws Exception {
+        try (StubDownloadServer stub = new StubDownloadServer(FaultProfile.none())) {
+            stub.start();
+            stub.publish("geyser", 1, StubDownloadServer.jar(64 * 1024, 4), "spigot");
+            stub.publish("floodgate", 1, StubDownloadServer.jar(64 * 1024, 5), "spigot");
+            Path config = writeConfig(stub.baseUrl());
+            Path server = spigotServer("a");
+            Path leftover = Files.createDirectories(server.resolve("plugins/.geyserupdater-staging")).resolve("geyser-1.jar.part");
+            Files.write(leftover, new byte[16]);
+
+            assertEquals(HeadlessUpdater.EXIT_OK, run("--config", config.toString(), server + ":spigot"), stderr());
+            assertFalse(Files.exists(leftover));
+            try (var files = Files.list(config)) {
+                assertEquals(List.of(config.resolve("config.yml")), files.toList());
+            }
+        }
+    }
+
+    private Path writeConfig(String baseUrl) throws Exception {
+        Path config = Files.createDirectory(dir.resolve("config"));
+        Files.writeString(config.resolve("config.yml"), "download:\n  baseUrl: \"" + baseUrl + "\"\n");
+        return config;
+    }
+
+    private Path spigotServer(String name) throws Exception {
+        Path server = Files.createDirectories(dir.resolve(name).resolve("plugins")).getParent();
+        Files.write(server.resolve("plugins/Geyser-Spigot.jar"), new byte[0]);
+        Files.write(server.resolve("plugins/floodgate-spigot.jar"), new byte[0]);
+        return server;
+    }
+
+    private int run(String... args) {
+        return HeadlessUpdater.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private String stdout() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private String stderr() {
+        return err.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String[] concat(String[] a, String[] b) {
+        String[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        return all;
+    }
+}
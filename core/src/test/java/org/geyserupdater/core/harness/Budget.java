@@ -0,0 +1,30 @@
+package org.geyserupdater.core.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Limits a scenario must stay within; a value of 0 disables that limit. */
+public class Budget {
+    public long maxP95Millis;
+    public int maxPeakThreads;
+    public long maxPeakHeapMb;
+    public double minThroughputKbps;
+
+    public Budget p95(long millis) { this.maxP95Millis = millis; return this; }
+
+    public Budget threads(int peak) { this.maxPeakThreads = peak; return this; }
+
+    public Budget heapMb(long peak) { this.maxPeakHeapMb = peak; return this; }
+
+    public Budget throughputKbps(double min) { this.minThroughputKbps = min; return this; }
+
+    List<String> violations(ScenarioReport r) {
+        List<String> out = new ArrayList<>();
+        if (maxP95Millis > 0 && r.p95Millis > maxP95Millis) out.add("p95 " + r.p95Millis + "ms > " + maxP95Millis + "ms");
+        if (maxPeakThreads > 0 && r.peakThreads > maxPeakThreads) out.add("peak threads " + r.peakThreads + " > " + maxPeakThreads);
+        if (maxPeakHeapMb > 0 && r.peakHeapMb > maxPeakHeapMb) out.add("peak heap " + r.peakHeapMb + "MB > " + maxPeakHeapMb + "MB");
+        if (minThroughputKbps > 0 && r.throughputKbps < minThroughputKbps) out.add(String.format("throughput %.0fKB/s < %.0fKB/s", r.throughputKbps, minThroughputKbps));
+        if (!r.integrityOk) out.add("an installed jar matches neither the previous nor the published build");
+        return out;
+    }
+}
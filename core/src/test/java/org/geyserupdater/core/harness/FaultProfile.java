@@ -0,0 +1,68 @@
+package org.geyserupdater.core.harness;
+
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Network conditions injected by {@link StubDownloadServer}. Rates are probabilities per request
+ * (0.0 - 1.0). Fields are volatile so a scenario can change conditions while requests are in flight.
+ */
+public class FaultProfile {
+    /** Faults are drawn from this, so the same scenario injects the same faults on every run. */
+    public volatile long seed = 1;
+    public volatile long latencyMillis;
+    /** Bandwidth cap per connection in bytes per second; 0 = unlimited. */
+    public volatile long bytesPerSecond;
+    public volatile double errorRate;
+    public volatile double truncateRate;
+    public volatile double resetRate;
+    /** Share of downloads that stop sending halfway and keep the connection open. */
+    public volatile double stallRate;
+    /** Share of downloads with one byte flipped somewhere in the middle of the jar. */
+    public volatile double corruptRate;
+    /** Whether downloads advertise and honour byte ranges. */
+    public volatile boolean acceptRanges = true;
+    /** Whether build metadata carries a sha256 per download. */
+    public volatile boolean publishChecksums = true;
+
+    public static FaultProfile none() {
+        return new FaultProfile();
+    }
+
+    public FaultProfile seed(long seed) { this.seed = seed; return this; }
+
+    public FaultProfile latency(long millis) { this.latencyMillis = millis; return this; }
+
+    public FaultProfile bandwidth(long bytesPerSecond) { this.bytesPerSecond = bytesPerSecond; return this; }
+
+    public FaultProfile errors(double rate) { this.errorRate = rate; return this; }
+
+    public FaultProfile truncation(double rate) { this.truncateRate = rate; return this; }
+
+    public FaultProfile resets(double rate) { this.resetRate = rate; return this; }
+
+    public FaultProfile stalls(double rate) { this.stallRate = rate; return this; }
+
+    public FaultProfile corruption(double rate) { this.corruptRate = rate; return this; }
+
+    public FaultProfile ranges(boolean accept) { this.acceptRanges = accept; return this; }
+
+    public FaultProfile checksums(boolean publish) { this.publishChecksums = publish; return this; }
+
+    /**
+     * The dice for one request, derived from the request itself and how often it was made before
+     * rather than from a shared sequence, so concurrent requests cannot change each other's faults.
+     */
+    SplittableRandom random(String request, int attempt) {
+        // Unlike java.util.Random, neighbouring seeds give unrelated first draws
+        return new SplittableRandom(Objects.hash(seed, request, attempt));
+    }
+
+    @Override
+    public String toString() {
+        return "seed=" + seed + " latency=" + latencyMillis + "ms bandwidth=" + (bytesPerSecond == 0 ? "unlimited" : bytesPerSecond + "B/s")
+                + " 5xx=" + errorRate + " truncate=" + truncateRate + " reset=" + resetRate
+                + " stall=" + stallRate + " corrupt=" + corruptRate + " ranges=" + acceptRanges
+                + " checksums=" + publishChecksums;
+    }
+}
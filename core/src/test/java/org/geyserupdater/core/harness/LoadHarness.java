@@ -0,0 +1,318 @@
+package org.geyserupdater.core.harness;
+
+import org.geyserupdater.core.CircuitBreaker;
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.Platform;
+import org.geyserupdater.core.UpdaterService;
+import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.util.FileUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load and fault-injection runs of {@link UpdaterService} against a {@link StubDownloadServer}.
+ * Each scenario records latency percentiles, throughput, peak threads and peak heap, and fails when it
+ * exceeds its budget. Run by {@link LoadHarnessIT}.
+ *
+ * Peak threads are counted above the threads alive when the scenario starts, so they include the
+ * stub server's own threads but not those of earlier scenarios. Heap figures are process-wide.
+ */
+public final class LoadHarness {
+    private static final int JAR_SIZE = 2 * 1024 * 1024;
+    private static final String[] DOWNLOAD_KEYS = {"spigot", "bungeecord", "velocity"};
+
+    private LoadHarness() {}
+
+    static List<Scenario> scenarios() {
+        List<Scenario> list = new ArrayList<>();
+        list.add(new Scenario("manual-runs", FaultProfile.none(),
+                new Budget().p95(3_000).threads(80).heapMb(256),
+                run -> {
+                    for (int i = 0; i < 5; i++) {
+                        run.publishNewBuild();
+                        run.check(); // downloads the new build
+                        run.check(); // metadata only: already installed
+                    }
+                }));
+        // The 40 admin threads are the harness's own. The service adds one check's worth: a client thread
+        // per connection (metadata, HEAD and four ranges), the watchdog timer and as many stub workers
+        list.add(new Scenario("admin-login-storm", FaultProfile.none().latency(100).bandwidth(4L << 20),
+                new Budget().p95(10_000).threads(40 + 30).heapMb(512),
+                run -> {
+                    run.publishNewBuild();
+                    long jarBytes = run.server.jarBytesServed();
+                    int admins = 40;
+                    CountDownLatch start = new CountDownLatch(1);
+                    ExecutorService pool = Executors.newFixedThreadPool(admins);
+                    for (int i = 0; i < admins; i++) {
+                        pool.execute(() -> {
+                            try {
+                                start.await();
+                                run.check();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+                    }
+                    start.countDown();
+                    pool.shutdown();
+                    pool.awaitTermination(5, TimeUnit.MINUTES);
+                    // Logins at the same moment share one check, which downloads each jar once
+                    run.expectJarBytes(run.server.jarBytesServed() - jarBytes);
+                }));
+        list.add(new Scenario("overlapping-periodic", FaultProfile.none().latency(50).bandwidth(1L << 20),
+                new Budget().p95(15_000).threads(150).heapMb(512),
+                run -> {
+                    // The timer only fires; checks run on their own threads so a slow one does not delay the next
+                    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+                    ExecutorService checks = Executors.newCachedThreadPool();
+                    timer.scheduleAtFixedRate(() -> checks.execute(run::check), 0, 300, TimeUnit.MILLISECONDS);
+                    for (int i = 0; i < 3; i++) {
+                        run.publishNewBuild();
+                        Thread.sleep(1_000);
+                    }
+                    timer.shutdown();
+                    timer.awaitTermination(1, TimeUnit.MINUTES);
+                    checks.shutdown();
+                    checks.awaitTermination(5, TimeUnit.MINUTES);
+                }));
+        list.add(new Scenario("flaky-upstream", FaultProfile.none().errors(0.2).truncation(0.2).resets(0.2),
+                new Budget().p95(5_000).threads(80).heapMb(256),
+                run -> {
+                    for (int i = 0; i < 20; i++) {
+                        run.publishNewBuild();
+                        run.check();
+                    }
+                }));
+        // Bandwidth is capped per connection, like a single TCP flow over a long path
+        list.add(new Scenario("segmented-long-haul", FaultProfile.none().latency(150).bandwidth(512L << 10),
+                new Budget().p95(4_000).threads(80).heapMb(256),
+                run -> {
+                    for (int i = 0; i < 3; i++) {
+                        run.publishNewBuild();
+                        run.check();
+                    }
+                }));
+        list.add(new Scenario("no-ranges", FaultProfile.none().latency(150).bandwidth(512L << 10).ranges(false),
+                new Budget().p95(12_000).threads(80).heapMb(256),
+                run -> {
+                    for (int i = 0; i < 3; i++) {
+                        run.publishNewBuild();
+                        run.check();
+                    }
+                }));
+        // A stalled range costs stallSeconds before its retry; without stall detection a check would never return
+        list.add(new Scenario("stalled-upstream", FaultProfile.none().bandwidth(1L << 20).stalls(0.3),
+                new Budget().p95(15_000).threads(80).heapMb(256),
+                run -> {
+                    run.cfg.download.stallSeconds = 2;
+                    for (int i = 0; i < 10; i++) {
+                        run.publishNewBuild();
+                        run.check();
+                    }
+                }));
+        // No published checksums, so only the streaming jar check stands between a flipped byte and the plugins folder
+        list.add(new Scenario("unverified-corruption", FaultProfile.none().checksums(false).corruption(0.3),
+                new Budget().p95(3_000).threads(80).heapMb(256),
+                run -> {
+                    for (int i = 0; i < 10; i++) {
+                        run.publishNewBuild();
+                        run.check();
+                    }
+                }));
+        FaultProfile dead = FaultProfile.none().latency(1_000).errors(1.0);
+        // The checks that open the breaker are meant to be slow, so instead of a p95 every check made
+        // while it is open is held to the fast path itself
+        list.add(new Scenario("dead-upstream", dead,
+                new Budget().threads(80).heapMb(256),
+                run -> {
+                    run.cfg.circuitBreaker.coolDownSeconds = 5;
+                    run.publishNewBuild();
+                    int opened = -1;
+                    for (int i = 0; i < 20; i++) {
+                        boolean open = run.service.circuitState() == CircuitBreaker.State.OPEN;
+                        int requests = run.server.requests();
+                        long millis = run.check();
+                        if (open && (millis > 50 || run.server.requests() != requests)) {
+                            throw new IllegalStateException("Check " + i + " with the breaker open took " + millis
+                                    + " ms and sent " + (run.server.requests() - requests) + " requests");
+                        }
+                        if (opened < 0 && run.service.circuitState() == CircuitBreaker.State.OPEN) opened = i;
+                    }
+                    if (opened < 0 || opened >= run.cfg.circuitBreaker.failureThreshold) {
+                        throw new IllegalStateException("Breaker opened at check " + opened + ", expected within "
+                                + run.cfg.circuitBreaker.failureThreshold);
+                    }
+                    // After the cool-down a single probe finds the API back and closes the breaker
+                    dead.latency(0).errors(0);
+                    Thread.sleep(5_500);
+                    run.check();
+                    if (run.service.circuitState() != CircuitBreaker.State.CLOSED) {
+                        throw new IllegalStateException("Breaker did not close after recovery");
+                    }
+                }));
+        return list;
+    }
+
+    static ScenarioReport run(Scenario scenario) throws Exception {
+        // Threads left behind by earlier scenarios (or other tests in this JVM) are not this one's
+        System.gc();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baselineThreads = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        Path root = Files.createTempDirectory("geyserupdater-harness");
+        Config cfg = new Config();
+        try (StubDownloadServer server = new StubDownloadServer(scenario.faults);
+             UpdaterService service = new UpdaterService(new QuietLog(), cfg)) {
+            server.start();
+            cfg.download.baseUrl = server.baseUrl();
+            Run run = new Run(cfg, service, root.resolve("plugins"), server);
+            run.install();
+
+            List<MemoryPoolMXBean> heap = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heap.add(pool);
+                }
+            }
+            long bytesBefore = server.bytesServed();
+            long start = System.nanoTime();
+
+            scenario.driver.drive(run);
+
+            double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+            ScenarioReport report = new ScenarioReport(scenario.name);
+            report.latencies(run.latencies);
+            report.failedOutcomes = run.failed.get();
+            report.throughputKbps = (server.bytesServed() - bytesBefore) / 1024.0 / seconds;
+            report.peakThreads = threads.getPeakThreadCount() - baselineThreads;
+            report.peakHeapMb = heap.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum() >> 20;
+            report.integrityOk = run.installedJarsAreKnownBuilds();
+            report.violations.addAll(scenario.budget.violations(report));
+            return report;
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Driver {
+        void drive(Run run) throws Exception;
+    }
+
+    static final class Scenario {
+        final String name;
+        final FaultProfile faults;
+        final Budget budget;
+        final Driver driver;
+
+        Scenario(String name, FaultProfile faults, Budget budget, Driver driver) {
+            this.name = name;
+            this.faults = faults;
+            this.budget = budget;
+            this.driver = driver;
+        }
+    }
+
+    /** State of one scenario: the service under test, its plugins folder and what was published. */
+    static final class Run {
+        private static final String[][] JARS = {{"geyser", "Geyser-Spigot.jar"}, {"floodgate", "floodgate-spigot.jar"}};
+
+        final Config cfg;
+        final UpdaterService service;
+        final Path pluginsDir;
+        final StubDownloadServer server;
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger failed = new AtomicInteger();
+        private final Set<String> knownShas = Collections.synchronizedSet(new HashSet<>());
+        private final AtomicInteger build = new AtomicInteger();
+
+        Run(Config cfg, UpdaterService service, Path pluginsDir, StubDownloadServer server) {
+            this.cfg = cfg;
+            this.service = service;
+            this.pluginsDir = pluginsDir;
+            this.server = server;
+        }
+
+        /** Puts build 0 of every project in place, as if installed by hand. */
+        void install() throws IOException {
+            Files.createDirectories(pluginsDir);
+            for (String[] jar : JARS) {
+                Path file = pluginsDir.resolve(jar[1]);
+                Files.write(file, StubDownloadServer.jar(JAR_SIZE, jar[0].hashCode()));
+                knownShas.add(FileUtils.sha256(file));
+            }
+            publishNewBuild();
+        }
+
+        void publishNewBuild() throws IOException {
+            int b = build.incrementAndGet();
+            for (String[] jar : JARS) {
+                server.publish(jar[0], b, StubDownloadServer.jar(JAR_SIZE, jar[0].hashCode() + b), DOWNLOAD_KEYS);
+                knownShas.add(server.sha256Of(jar[0]));
+            }
+        }
+
+        /** Runs one check and returns how long it took in milliseconds. */
+        long check() {
+            long start = System.nanoTime();
+            List<UpdaterService.UpdateOutcome> outcomes = service.checkAndUpdate(Platform.SPIGOT, pluginsDir);
+            long millis = (System.nanoTime() - start) / 1_000_000L;
+            latencies.add(millis);
+            for (UpdaterService.UpdateOutcome o : outcomes) {
+                if (o.error.isPresent()) failed.incrementAndGet();
+            }
+            return millis;
+        }
+
+        void expectJarBytes(long served) {
+            long once = 0;
+            for (String[] jar : JARS) once += server.jarSize(jar[0]);
+            if (served != once) {
+                throw new IllegalStateException("Served " + served + " jar bytes, one download of each is " + once);
+            }
+        }
+
+        /** A truncated or corrupted download must never end up installed. */
+        boolean installedJarsAreKnownBuilds() throws IOException {
+            for (String[] jar : JARS) {
+                if (!knownShas.contains(FileUtils.sha256(pluginsDir.resolve(jar[1])))) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class QuietLog implements LogAdapter {
+        @Override public void info(String msg) {}
+        @Override public void warn(String msg) {}
+        @Override public void error(String msg, Throwable t) {}
+    }
+}
@@ -0,0 +1,46 @@
+package org.geyserupdater.core.harness;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs every {@link LoadHarness} scenario in the {@code verify} phase of the {@code load} profile,
+ * one after the other, writing one report line per scenario to {@code harness.reportFile}.
+ * {@code -Dharness.scenarios=flaky-upstream,no-ranges} runs only the named ones.
+ */
+class LoadHarnessIT {
+    private static final Path REPORT = Path.of(System.getProperty("harness.reportFile", "target/load-harness.txt"));
+
+    @BeforeAll
+    static void startReport() throws IOException {
+        Files.createDirectories(REPORT.toAbsolutePath().getParent());
+        Files.deleteIfExists(REPORT);
+    }
+
+    @TestFactory
+    Stream<DynamicTest> scenarios() {
+        String names = System.getProperty("harness.scenarios", "");
+        Set<String> only = Arrays.stream(names.split(",")).map(String::trim).filter(n -> !n.isEmpty())
+                .collect(Collectors.toSet());
+        return LoadHarness.scenarios().stream()
+                .filter(s -> only.isEmpty() || only.contains(s.name))
+                .map(s -> DynamicTest.dynamicTest(s.name, () -> {
+                    ScenarioReport report = LoadHarness.run(s);
+                    Files.writeString(REPORT, report + System.lineSeparator(),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    assertTrue(report.passed(), report::toString);
+                }));
+    }
+}
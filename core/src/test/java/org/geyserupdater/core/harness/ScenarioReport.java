@@ -0,0 +1,50 @@
+package org.geyserupdater.core.harness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Measurements of one scenario run, checked against its {@link Budget}. */
+public class ScenarioReport {
+    public final String name;
+    public int checks;
+    public int failedOutcomes;
+    public long p50Millis;
+    public long p95Millis;
+    public long p99Millis;
+    public double throughputKbps;
+    public int peakThreads;
+    public long peakHeapMb;
+    public boolean integrityOk = true;
+    public final List<String> violations = new ArrayList<>();
+
+    ScenarioReport(String name) {
+        this.name = name;
+    }
+
+    void latencies(List<Long> millis) {
+        List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        checks = sorted.size();
+        p50Millis = percentile(sorted, 0.50);
+        p95Millis = percentile(sorted, 0.95);
+        p99Millis = percentile(sorted, 0.99);
+    }
+
+    public boolean passed() {
+        return violations.isEmpty();
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return 0;
+        int idx = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(idx, sorted.size() - 1)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-22s %s checks=%d failed=%d p50=%dms p95=%dms p99=%dms throughput=%.0fKB/s peakThreads=%d peakHeap=%dMB%s",
+                name, passed() ? "PASS" : "FAIL", checks, failedOutcomes, p50Millis, p95Millis, p99Millis,
+                throughputKbps, peakThreads, peakHeapMb, passed() ? "" : " " + violations);
+    }
+}
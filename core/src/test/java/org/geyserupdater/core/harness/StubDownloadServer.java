@@ -0,0 +1,311 @@
+package org.geyserupdater.core.harness;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Loopback HTTP/1.1 stand-in for the download API. Serves build metadata and jars for the
+ * projects it was given, with latency, bandwidth limits, 5xx responses, truncated or corrupted
+ * bodies, connection resets and stalled transfers injected according to a {@link FaultProfile}. One request per connection.
+ */
+public class StubDownloadServer implements AutoCloseable {
+    private static final Pattern METADATA = Pattern.compile("/v2/projects/([^/]+)/versions/latest/builds/latest");
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final Pattern DOWNLOAD = Pattern.compile("/v2/projects/([^/]+)/versions/[^/]+/builds/([^/]+)/downloads/([^/]+)");
+
+    private final FaultProfile faults;
+    // Latest build per project, plus every build ever published so pinned download URLs keep working
+    private final Map<String, Build> builds = new ConcurrentHashMap<>();
+    private final Map<String, Build> history = new ConcurrentHashMap<>();
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "StubDownloadServer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong jarBytesServed = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+    // How often each request line (and range) has been seen, which picks its faults
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<RangeRequest> rangeRequests = new ConcurrentLinkedQueue<>();
+    private ServerSocket serverSocket;
+
+    public StubDownloadServer(FaultProfile faults) {
+        this.faults = faults;
+    }
+
+    /** Publishes (or replaces) the latest build of a project; each download key serves the same jar. */
+    public void publish(String project, int build, byte[] jar, String... downloadKeys) {
+        Build b = new Build(build, jar, sha256(jar), downloadKeys);
+        history.put(project + "/" + build, b);
+        builds.put(project, b);
+    }
+
+    public String sha256Of(String project) {
+        return builds.get(project).sha256;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        workers.execute(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    workers.execute(() -> handle(socket));
+                } catch (IOException ignored) {
+                    // closed
+                }
+            }
+        });
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/v2/projects";
+    }
+
+    public long bytesServed() {
+        return bytesServed.get();
+    }
+
+    /** Bytes of jar bodies sent, ranges included; metadata and error bodies do not count. */
+    public long jarBytesServed() {
+        return jarBytesServed.get();
+    }
+
+    /** Size of the latest published jar of a project. */
+    public int jarSize(String project) {
+        return builds.get(project).jar.length;
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    /** Every ranged download request so far, in arrival order. */
+    public List<RangeRequest> rangeRequests() {
+        return new ArrayList<>(rangeRequests);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+        workers.shutdownNow();
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            String requestLine = in.readLine();
+            if (requestLine == null) return;
+            String range = null;
+            boolean upgrade = false;
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                if (line.regionMatches(true, 0, "Range:", 0, 6)) range = line.substring(6).trim();
+                if (line.regionMatches(true, 0, "Upgrade:", 0, 8)) upgrade = true;
+            }
+            requests.incrementAndGet();
+            String[] request = requestLine.split(" ");
+            boolean head = request[0].equals("HEAD");
+            String path = request[1];
+            sleep(faults.latencyMillis);
+
+            String key = requestLine + (range != null ? " " + range : "");
+            SplittableRandom rnd = faults.random(key, attempts.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement());
+            if (rnd.nextDouble() < faults.resetRate) {
+                // SO_LINGER 0 makes close() send RST instead of FIN
+                socket.setSoLinger(true, 0);
+                return;
+            }
+            if (rnd.nextDouble() < faults.errorRate) {
+                respond(socket, 503, "text/plain", "unavailable".getBytes(StandardCharsets.UTF_8), false, head);
+                return;
+            }
+
+            Matcher m = METADATA.matcher(path);
+            if (m.matches() && builds.containsKey(m.group(1))) {
+                respond(socket, 200, "application/json", metadata(m.group(1)).getBytes(StandardCharsets.UTF_8), false, head);
+                return;
+            }
+            m = DOWNLOAD.matcher(path);
+            if (m.matches()) {
+                Build b = m.group(2).equals("latest") ? builds.get(m.group(1)) : history.get(m.group(1) + "/" + m.group(2));
+                if (b != null) {
+                    boolean truncate = rnd.nextDouble() < faults.truncateRate;
+                    boolean stall = !head && rnd.nextDouble() < faults.stallRate;
+                    byte[] jar = rnd.nextDouble() < faults.corruptRate ? corrupt(b.jar, rnd) : b.jar;
+                    Matcher r = range == null ? null : RANGE.matcher(range);
+                    if (faults.acceptRanges && r != null && r.matches()) {
+                        rangeRequests.add(new RangeRequest(range, socket.getPort(), upgrade));
+                        int from = Integer.parseInt(r.group(1));
+                        int to = Math.min(jar.length - 1, Integer.parseInt(r.group(2)));
+                        byte[] part = Arrays.copyOfRange(jar, from, to + 1);
+                        jarBytesServed.addAndGet(respond(socket, 206, "application/java-archive", part, truncate || stall, head,
+                                "Content-Range: bytes " + from + "-" + to + "/" + jar.length));
+                    } else {
+                        jarBytesServed.addAndGet(respond(socket, 200, "application/java-archive", jar, truncate || stall, head,
+                                faults.acceptRanges ? "Accept-Ranges: bytes" : null));
+                    }
+                    if (stall) {
+                        // Half sent; hold the connection open without sending more until the client gives up
+                        while (socket.getInputStream().read() != -1) {
+                            // discard
+                        }
+                    }
+                    return;
+                }
+            }
+            respond(socket, 404, "text/plain", "not found".getBytes(StandardCharsets.UTF_8), false, head);
+        } catch (IOException ignored) {
+            // client went away
+        }
+    }
+
+    private void respond(Socket socket, int status, String type, byte[] body, boolean truncate, boolean headOnly) throws IOException {
+        respond(socket, status, type, body, truncate, headOnly, null);
+    }
+
+    // Returns how many body bytes were sent
+    private int respond(Socket socket, int status, String type, byte[] body, boolean truncate, boolean headOnly,
+                        String extraHeader) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        String head = "HTTP/1.1 " + status + " " + (status / 100 == 2 ? "OK" : "Error") + "\r\n"
+                + "Content-Type: " + type + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + (extraHeader != null ? extraHeader + "\r\n" : "")
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        int length = headOnly ? 0 : truncate ? body.length / 2 : body.length;
+        long rate = faults.bytesPerSecond;
+        int chunk = rate > 0 ? (int) Math.max(1024, Math.min(65536, rate / 10)) : 65536;
+        long start = System.nanoTime();
+        for (int off = 0; off < length; off += chunk) {
+            int n = Math.min(chunk, length - off);
+            out.write(body, off, n);
+            bytesServed.addAndGet(n);
+            if (rate > 0) {
+                long due = start + (off + n) * 1_000_000_000L / rate;
+                long wait = due - System.nanoTime();
+                if (wait > 0) sleep(wait / 1_000_000L);
+            }
+        }
+        out.flush();
+        return length;
+    }
+
+    private String metadata(String project) {
+        Build b = builds.get(project);
+        StringBuilder downloads = new StringBuilder();
+        for (String key : b.downloadKeys) {
+            if (downloads.length() > 0) downloads.append(',');
+            downloads.append('"').append(key).append("\":{\"name\":\"").append(project).append('-').append(key)
+                    .append(".jar\"");
+            if (faults.publishChecksums) downloads.append(",\"sha256\":\"").append(b.sha256).append('"');
+            downloads.append('}');
+        }
+        return "{\"project_id\":\"" + project + "\",\"version\":\"1.0.0\",\"build\":" + b.build
+                + ",\"channel\":\"default\",\"downloads\":{" + downloads + "}}";
+    }
+
+    /** Builds a valid jar of roughly {@code size} bytes; the seed makes the content (and hash) reproducible. */
+    public static byte[] jar(int size, long seed) throws IOException {
+        Random random = new Random(seed);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size + 4096);
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write(("Manifest-Version: 1.0\nBuild-Seed: " + seed + "\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            byte[] block = new byte[64 * 1024];
+            for (int i = 0; bytes.size() < size; i++) {
+                zip.putNextEntry(new ZipEntry("data/block" + i + ".bin"));
+                random.nextBytes(block);
+                zip.write(block);
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** A copy with one byte of the middle half flipped, so length and headers still look right. */
+    private static byte[] corrupt(byte[] jar, SplittableRandom rnd) {
+        byte[] copy = jar.clone();
+        int at = jar.length / 4 + rnd.nextInt(Math.max(1, jar.length / 2));
+        copy[at] ^= (byte) (1 + rnd.nextInt(255));
+        return copy;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            StringBuilder sb = new StringBuilder(64);
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A ranged request: the range, the client port of its connection, and whether it offered an HTTP/2 upgrade. */
+    public static final class RangeRequest {
+        public final String range;
+        public final int clientPort;
+        public final boolean upgrade;
+
+        RangeRequest(String range, int clientPort, boolean upgrade) {
+            this.range = range;
+            this.clientPort = clientPort;
+            this.upgrade = upgrade;
+        }
+    }
+
+    private static final class Build {
+        final int build;
+        final byte[] jar;
+        final String sha256;
+        final String[] downloadKeys;
+
+        Build(int build, byte[] jar, String sha256, String[] downloadKeys) {
+            this.build = build;
+            this.jar = jar;
+            this.sha256 = sha256;
+            this.downloadKeys = downloadKeys;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.geyserupdater.core.restart;
+
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.logging.LogAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Drives a coordinator on loopback with fake backends speaking the line protocol. */
+class RestartCoordinatorTest {
+    private static final long TICK_MILLIS = 50;
+    // Long enough for several ticks, so "no GRANT" means the coordinator decided against it
+    private static final int QUIET_MILLIS = 500;
+
+    private final Config cfg = new Config();
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, Integer> players = new ConcurrentHashMap<>();
+    private final List<Backend> backends = new ArrayList<>();
+    private RestartCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        cfg.restartCoordinator.host = "127.0.0.1";
+        cfg.restartCoordinator.port = 0;
+        cfg.restartCoordinator.maxConcurrent = 1;
+        cfg.restartCoordinator.returnTimeoutMinutes = 1;
+    }
+
+    @AfterEach
+    void tearDown() {
+        backends.forEach(Backend::close);
+        if (coordinator != null) coordinator.close();
+    }
+
+    @Test
+    void grantsOnePermitAtATime() throws Exception {
+        start();
+        Backend lobby = staged("lobby");
+        assertEquals("QUEUED 1", lobby.read());
+        assertEquals("GRANT", lobby.read());
+        Backend survival = staged("survival");
+        assertEquals("QUEUED 1", survival.read());
+        assertNull(survival.readWithin(QUIET_MILLIS));
+    }
+
+    @Test
+    void releasesPermitOnceBackendIsBackAndServing() throws Exception {
+        start();
+        players.put("lobby", 0);
+        players.put("survival", 3);
+        Backend lobby = staged("lobby");
+        lobby.skipTo("GRANT");
+        Backend survival = staged("survival");
+        survival.read();
+
+        assertEquals("OK", hello("lobby"));
+        // Back, but the proxy routes nobody there yet while others are online
+        assertNull(survival.readWithin(QUIET_MILLIS));
+        players.put("lobby", 1);
+        assertEquals("GRANT", survival.read());
+    }
+
+    @Test
+    void releasesPermitAfterReturnTimeout() throws Exception {
+        start();
+        staged("lobby").skipTo("GRANT");
+        Backend survival = staged("survival");
+        survival.read();
+        assertNull(survival.readWithin(QUIET_MILLIS));
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertEquals("GRANT", survival.read());
+    }
+
+    @Test
+    void queuedBackendThatDisconnectsGivesUpItsPlace() throws Exception {
+        start();
+        staged("lobby").skipTo("GRANT");
+        Backend survival = staged("survival");
+        survival.read();
+        Backend creative = staged("creative");
+        creative.read();
+
+        survival.close();
+        Thread.sleep(QUIET_MILLIS);
+        hello("lobby");
+        // Had survival kept its place, it would have taken the permit and creative would wait for its timeout
+        assertEquals("GRANT", creative.read());
+    }
+
+    @Test
+    void rejectsCommandsWithoutTheSecret() throws Exception {
+        cfg.restartCoordinator.secret = "s3cret";
+        start();
+        Backend lobby = new Backend("AUTH s3cret", "STAGED lobby");
+        backends.add(lobby);
+        lobby.skipTo("GRANT");
+        Backend survival = new Backend("AUTH s3cret", "STAGED survival");
+        backends.add(survival);
+        survival.read();
+
+        assertEquals("ERROR unauthorized", hello("lobby"));
+        assertEquals("ERROR unauthorized", send("AUTH wrong", "HELLO lobby"));
+        assertNull(survival.readWithin(QUIET_MILLIS));
+        assertEquals("OK", send("AUTH s3cret", "HELLO lobby"));
+        assertEquals("GRANT", survival.read());
+    }
+
+    @Test
+    void refusesToListenBeyondLoopbackWithoutSecret() {
+        cfg.restartCoordinator.host = "0.0.0.0";
+        coordinator = new RestartCoordinator(new NoLog(), cfg, status());
+        assertThrows(IOException.class, coordinator::start);
+    }
+
+    @Test
+    void clientRunsRestartOnGrant() throws Exception {
+        cfg.restartCoordinator.secret = "s3cret";
+        start();
+        Config backend = new Config();
+        backend.restartCoordinator.port = coordinator.address().getPort();
+        backend.restartCoordinator.serverName = "lobby";
+        backend.restartCoordinator.secret = "s3cret";
+        CountDownLatch restarted = new CountDownLatch(1);
+        try (RestartCoordinatorClient client = new RestartCoordinatorClient(new NoLog(), backend)) {
+            client.requestRestart(restarted::countDown);
+            assertTrue(restarted.await(5, TimeUnit.SECONDS));
+        }
+        // The permit stays with lobby until it says HELLO
+        Backend survival = new Backend("AUTH s3cret", "STAGED survival");
+        backends.add(survival);
+        assertEquals("QUEUED 1", survival.read());
+        assertNull(survival.readWithin(QUIET_MILLIS));
+        try (RestartCoordinatorClient client = new RestartCoordinatorClient(new NoLog(), backend)) {
+            client.hello();
+            assertEquals("GRANT", survival.read());
+        }
+    }
+
+    @Test
+    void closingTwiceIsHarmless() throws Exception {
+        start();
+        coordinator.close();
+        assertDoesNotThrow(coordinator::close);
+    }
+
+    private void start() throws IOException {
+        coordinator = new RestartCoordinator(new NoLog(), cfg, status(), clock::get, TICK_MILLIS);
+        coordinator.start();
+    }
+
+    private BackendStatus status() {
+        return new BackendStatus() {
+            @Override
+            public int playerCount(String server) {
+                return players.getOrDefault(server, -1);
+            }
+
+            @Override
+            public int totalPlayers() {
+                return players.values().stream().mapToInt(Integer::intValue).sum();
+            }
+        };
+    }
+
+    private Backend staged(String server) throws IOException {
+        Backend b = new Backend("STAGED " + server);
+        backends.add(b);
+        return b;
+    }
+
+    private String hello(String server) throws IOException {
+        return send("HELLO " + server);
+    }
+
+    private String send(String... lines) throws IOException {
+        try (Backend b = new Backend(lines)) {
+            return b.read();
+        }
+    }
+
+    /** One connection to the coordinator, as a backend would open it. */
+    private final class Backend implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+
+        Backend(String... lines) throws IOException {
+            socket = new Socket("127.0.0.1", coordinator.address().getPort());
+            socket.setSoTimeout(5_000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+        }
+
+        String read() throws IOException {
+            return in.readLine();
+        }
+
+        /** The next line, or null if none arrives in time. */
+        String readWithin(int millis) throws IOException {
+            socket.setSoTimeout(millis);
+            try {
+                return in.readLine();
+            } catch (SocketTimeoutException e) {
+                return null;
+            } finally {
+                socket.setSoTimeout(5_000);
+            }
+        }
+
+        void skipTo(String expected) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null && !line.equals(expected)) {
+                // QUEUED lines
+            }
+            assertEquals(expected, line);
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // test teardown
+            }
+        }
+    }
+
+    private static final class NoLog implements LogAdapter {
+        @Override public void info(String msg) {}
+        @Override public void warn(String msg) {}
+        @Override public void error(String msg, Throwable t) {}
+    }
+}
@@ -0,0 +1,90 @@
+package org.geyserupdater.core.util;
+
+import org.geyserupdater.core.Config;
+import org.geyserupdater.core.load.LoadSignal;
+import org.geyserupdater.core.load.LoadThrottle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** A throttled range must wait on the watchdog's timer, never on the HTTP client thread that delivers it. */
+class PositionalBodySubscriberTest {
+    @TempDir
+    Path dir;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private volatile boolean busy = true;
+    private final LoadSignal signal = new LoadSignal() {
+        @Override public double mspt() { return busy ? 200 : 10; }
+        @Override public double tps() { return busy ? 5 : 20; }
+    };
+
+    @AfterEach
+    void stopTimer() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    void throttleDelaysTheNextRequestInsteadOfBlocking() throws Exception {
+        Config.Throttle throttle = new Config.Throttle();
+        throttle.maxPauseSeconds = 1;
+        // Shorter than the pause, which must not count as a stall
+        try (TransferWatchdog watchdog = new TransferWatchdog(timer, 1, Duration.ofMillis(500), Duration.ZERO, (b, t, r) -> {});
+             FileChannel out = FileChannel.open(Files.createFile(dir.resolve("part")), StandardOpenOption.WRITE)) {
+            PositionalBodySubscriber body = new PositionalBodySubscriber(out, 0, 8, n -> {},
+                    new LoadThrottle(signal, throttle), watchdog);
+            Requests requests = new Requests();
+            body.onSubscribe(requests);
+            assertNotNull(requests.next(0));
+
+            long start = System.nanoTime();
+            body.onNext(List.of(ByteBuffer.wrap(new byte[4])));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50), "onNext slept");
+            assertNull(requests.next(200), "requested more while the server is busy");
+
+            // Once the pause budget is spent the range goes on, from the timer's thread
+            Thread resumedOn = requests.next(3000);
+            assertNotNull(resumedOn, "never resumed");
+            assertFalse(resumedOn == Thread.currentThread());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+            assertFalse(body.getBody().toCompletableFuture().isDone(), "aborted as stalled while paused");
+
+            busy = false;
+            body.onNext(List.of(ByteBuffer.wrap(new byte[4])));
+            assertEquals(Thread.currentThread(), requests.next(0));
+            body.onComplete();
+            assertEquals(8L, body.getBody().toCompletableFuture().get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    // Records the thread of every request(1)
+    private static final class Requests implements Flow.Subscription {
+        private final LinkedBlockingQueue<Thread> calls = new LinkedBlockingQueue<>();
+
+        @Override public void request(long n) { calls.add(Thread.currentThread()); }
+        @Override public void cancel() {}
+
+        Thread next(long waitMillis) throws InterruptedException {
+            return calls.poll(waitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.geyserupdater.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Feeds archives written by {@link ZipOutputStream} through the validator, whole and damaged. */
+class ZipStreamValidatorTest {
+    private static final int END_SIZE = 22;
+
+    @Test
+    void acceptsDeflatedJarInAnyChunking() throws IOException {
+        byte[] jar = zip(false, "META-INF/MANIFEST.MF", "plugin.yml", "org/example/Main.class", "empty.txt");
+        for (long seed = 0; seed < 20; seed++) {
+            long s = seed;
+            assertDoesNotThrow(() -> validate(jar, s), "seed " + seed);
+        }
+    }
+
+    @Test
+    void acceptsStoredEntries() throws IOException {
+        byte[] jar = zip(true, "a.txt", "b/c.bin", "empty.txt");
+        assertDoesNotThrow(() -> validate(jar, 1));
+    }
+
+    @Test
+    void acceptsZip64EndRecord() throws IOException {
+        // More entries than the 16-bit count holds makes ZipOutputStream write the zip64 end record and locator
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < 70_000; i++) {
+                out.putNextEntry(new ZipEntry("e" + i));
+                out.closeEntry();
+            }
+        }
+        byte[] zip = bytes.toByteArray();
+        assertTrue(le16(zip, zip.length - END_SIZE + 10) == 0xFFFF, "expected a zip64 archive");
+        assertDoesNotThrow(() -> validate(zip, 2));
+    }
+
+    @Test
+    void rejectsTruncationInsideAnEntry() throws IOException {
+        byte[] jar = zip(true, "a.txt", "b/c.bin");
+        // Local header (30 bytes + name) of the first entry, then half of its data
+        byte[] cut = Arrays.copyOf(jar, 30 + "a.txt".length() + content("a.txt").length / 2);
+        ZipException e = assertThrows(ZipException.class, () -> validate(cut, 3));
+        assertTrue(e.getMessage().contains("inside an entry"), e.getMessage());
+    }
+
+    @Test
+    void rejectsTruncationInsideDeflatedEntry() throws IOException {
+        byte[] jar = zip(false, "org/example/Main.class");
+        byte[] cut = Arrays.copyOf(jar, 30 + "org/example/Main.class".length() + 10);
+        assertThrows(ZipException.class, () -> validate(cut, 4));
+    }
+
+    @Test
+    void rejectsCentralDirectoryThatDisagreesWithLocalHeader() throws IOException {
+        byte[] jar = zip(false, "plugin.yml", "org/example/Main.class");
+        int central = le32(jar, jar.length - END_SIZE + 16);
+        // CRC-32 of the first central directory entry
+        jar[central + 16] ^= 1;
+        ZipException e = assertThrows(ZipException.class, () -> validate(jar, 5));
+        assertTrue(e.getMessage().contains("disagrees"), e.getMessage());
+    }
+
+    @Test
+    void rejectsCentralDirectoryEntryWithoutLocalHeader() throws IOException {
+        byte[] jar = zip(true, "a.txt", "b/c.bin");
+        int central = le32(jar, jar.length - END_SIZE + 16);
+        // First letter of the first central directory entry's name
+        jar[central + 46] = 'x';
+        ZipException e = assertThrows(ZipException.class, () -> validate(jar, 6));
+        assertTrue(e.getMessage().contains("no matching local header"), e.getMessage());
+    }
+
+    @Test
+    void rejectsCorruptStoredData() throws IOException {
+        byte[] jar = zip(true, "a.txt");
+        jar[30 + "a.txt".length() + 3] ^= 0x20;
+        ZipException e = assertThrows(ZipException.class, () -> validate(jar, 7));
+        assertTrue(e.getMessage().contains("CRC-32"), e.getMessage());
+    }
+
+    @Test
+    void acceptsDataDescriptorEntries() throws IOException {
+        // ZipOutputStream only learns a deflated entry's CRC and sizes after writing it
+        byte[] jar = zip(false, "plugin.yml", "org/example/Main.class");
+        assertTrue((le16(jar, 6) & 0x08) != 0, "expected a data descriptor flag");
+        assertDoesNotThrow(() -> validate(jar, 8));
+    }
+
+    @Test
+    void rejectsDataDescriptorWithWrongCrc() throws IOException {
+        byte[] jar = zip(false, "plugin.yml", "org/example/Main.class");
+        int descriptor = indexOf(jar, new byte[] {'P', 'K', 7, 8}, 30 + "plugin.yml".length());
+        // CRC-32 right after the descriptor's signature
+        jar[descriptor + 4] ^= 1;
+        ZipException e = assertThrows(ZipException.class, () -> validate(jar, 9));
+        assertTrue(e.getMessage().contains("CRC-32 mismatch in plugin.yml"), e.getMessage());
+    }
+
+    @Test
+    void rejectsSomethingThatIsNotAZip() {
+        byte[] html = "<html><body>Rate limited</body></html>".getBytes(StandardCharsets.UTF_8);
+        ZipException e = assertThrows(ZipException.class, () -> validate(html, 10));
+        assertTrue(e.getMessage().contains("Not a zip"), e.getMessage());
+    }
+
+    // Random chunk sizes so headers, names and descriptors get split at every kind of boundary
+    private static void validate(byte[] zip, long seed) throws ZipException {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (ZipStreamValidator validator = new ZipStreamValidator()) {
+            int off = 0;
+            while (off < zip.length) {
+                int n = Math.min(zip.length - off, 1 + random.nextInt(random.nextBoolean() ? 7 : 8192));
+                validator.update(zip, off, n);
+                off += n;
+            }
+            validator.finish();
+        }
+    }
+
+    private static byte[] zip(boolean stored, String... names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (String name : names) {
+                byte[] data = content(name);
+                ZipEntry e = new ZipEntry(name);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    e.setMethod(ZipEntry.STORED);
+                    e.setSize(data.length);
+                    e.setCompressedSize(data.length);
+                    e.setCrc(crc.getValue());
+                }
+                out.putNextEntry(e);
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] content(String name) {
+        if (name.startsWith("empty")) return new byte[0];
+        // Partly compressible, partly not, and large enough to span several deflate blocks
+        SplittableRandom random = new SplittableRandom(name.hashCode());
+        byte[] data = new byte[40_000 + name.length() * 1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 3 == 0 ? random.nextInt(256) : 'a' + i % 26);
+        }
+        return data;
+    }
+
+    private static int indexOf(byte[] b, byte[] what, int from) {
+        for (int i = from; i <= b.length - what.length; i++) {
+            if (Arrays.equals(b, i, i + what.length, what, 0, what.length)) return i;
+        }
+        throw new AssertionError("not found");
+    }
+
+    private static int le16(byte[] b, int at) {
+        return (b[at] & 0xFF) | (b[at + 1] & 0xFF) << 8;
+    }
+
+    private static int le32(byte[] b, int at) {
+        return le16(b, at) | le16(b, at + 2) << 16;
+    }
+}
@@ -6,41 +6,101 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerCommandSendEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.ServerLoadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.geyserupdater.core.AdminRegistry;
+import org.geyserupdater.core.CheckHistory;
+import org.geyserupdater.core.CheckSummary;
 import org.geyserupdater.core.Config;
 import org.geyserupdater.core.ConfigManager;
 import org.geyserupdater.core.Platform;
+import org.geyserupdater.core.ProgressListener;
+import org.geyserupdater.core.QuietWindow;
+import org.geyserupdater.core.StartupPolicy;
 import org.geyserupdater.core.UpdaterService;
 import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.metrics.MetricsServer;
+import org.geyserupdater.core.restart.RestartCoordinatorClient;
+import org.geyserupdater.core.webhook.WebhookServer;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SpigotGeyserUpdaterPlugin extends JavaPlugin implements Listener {
     private ConfigManager cfgMgr;
-    private Config cfg;
+    private CheckHistory history;
+    private final SpigotTickMonitor tickMonitor = new SpigotTickMonitor();
+    private final CompletableFuture<Void> serverLoaded = new CompletableFuture<>();
+    private final AdminRegistry<Player> admins = new AdminRegistry<>();
+    private final AtomicBoolean quietRecheckScheduled = new AtomicBoolean();
+    // Bukkit's player list is main-thread only, so the async checks read this count instead
+    private final AtomicInteger onlinePlayers = new AtomicInteger();
+    // Both are null until the async bootstrap has finished
+    private volatile Config cfg;
+    private volatile UpdaterService service;
+    private RestartCoordinatorClient restartClient;
+    private MetricsServer metricsServer;
+    private WebhookServer webhook;
 
     @Override
     public void onEnable() {
         saveDefaultConfigFile(); // ensure folder exists
-        this.cfgMgr = new ConfigManager(getDataFolder().toPath());
-        this.cfg = cfgMgr.loadOrCreateDefault();
+        this.cfgMgr = new ConfigManager(getDataFolder().toPath(), new SpigotLogger());
+        this.history = new CheckHistory(getDataFolder().toPath());
+
+        getServer().getPluginManager().registerEvents(this, this);
+        // Non-zero after a /reload
+        onlinePlayers.set(Bukkit.getOnlinePlayers().size());
+        Bukkit.getScheduler().runTaskTimer(this, tickMonitor, 1L, 1L);
+
+        // Config parsing, migration and the HTTP client are all set up off the enable thread
+        Bukkit.getScheduler().runTaskAsynchronously(this, this::bootstrap);
+    }
+
+    private void bootstrap() {
+        Config loaded = cfgMgr.loadOrCreateDefault();
+        this.service = new UpdaterService(new SpigotLogger(), loaded);
+        service.setLoadSignal(tickMonitor);
+        this.cfg = loaded;
+        history.lastSuccess().ifPresent(service.metrics()::seedLastSuccess);
+        if (cfg.metrics.enabled) {
+            startMetrics();
+        }
+
+        service.cleanStaging(getDataFolder().toPath().getParent());
+        // Players who joined while we were loading
+        Bukkit.getScheduler().runTask(this, this::rebuildAdmins);
 
         // Execute migration
         migrateNestedPluginsIfNeeded(getDataFolder().toPath().getParent());
 
-        getServer().getPluginManager().registerEvents(this, this);
-
         if (!cfg.enabled) {
             getLogger().info(cfg.messages.pluginDisabled);
             return;
         }
 
+        if (cfg.restartCoordinator.enabled && !cfg.restartCoordinator.serverName.isBlank()) {
+            restartClient = new RestartCoordinatorClient(new SpigotLogger(), cfg);
+            restartClient.hello();
+        }
+
+        if (cfg.webhook.enabled) {
+            startWebhook();
+        }
+
         if (cfg.checkOnStartup) {
-            info(cfg.messages.startUpCheck);
-            runAsyncCheck(false, null);
+            scheduleStartupCheck();
         }
 
         if (cfg.periodic.enabled && cfg.periodic.intervalHours > 0) {
@@ -52,6 +112,60 @@ public class SpigotGeyserUpdaterPlugin extends JavaPlugin implements Listener {
         }
     }
 
+    @Override
+    public void onDisable() {
+        if (restartClient != null) restartClient.close();
+        if (metricsServer != null) metricsServer.close();
+        if (webhook != null) webhook.close();
+        if (service != null) service.close();
+        admins.clear();
+    }
+
+    private void startMetrics() {
+        metricsServer = new MetricsServer(cfg.metrics, service);
+        try {
+            metricsServer.start();
+            info(cfg.messages.metricsStarted.replace("{address}", cfg.metrics.host + ":" + metricsServer.address().getPort()));
+        } catch (IOException e) {
+            getLogger().warning(cfg.messages.metricsFailed.replace("{error}", String.valueOf(e.getMessage())));
+            metricsServer.close();
+            metricsServer = null;
+        }
+    }
+
+    private void startWebhook() {
+        // A push announces a build worth having now, so its check does not wait for the quiet window
+        webhook = new WebhookServer(new SpigotLogger(), cfg, () -> runAsyncCheck(false, null, false));
+        try {
+            webhook.start();
+            info(cfg.messages.webhookStarted
+                    .replace("{address}", cfg.webhook.host + ":" + webhook.address().getPort())
+                    .replace("{path}", webhook.path()));
+        } catch (IOException e) {
+            getLogger().warning(cfg.messages.webhookFailed.replace("{error}", String.valueOf(e.getMessage())));
+            webhook.close();
+            webhook = null;
+        }
+    }
+
+    private void scheduleStartupCheck() {
+        switch (StartupPolicy.decide(cfg, history, Instant.now())) {
+            case SKIP:
+                info(cfg.messages.startUpCheckSkipped.replace("{minutes}", String.valueOf(cfg.startup.skipIfCheckedWithinMinutes)));
+                break;
+            case DEFER:
+                info(cfg.messages.startUpCheckDeferred);
+                serverLoaded.thenRun(() -> {
+                    info(cfg.messages.startUpCheck);
+                    runAsyncCheck(false, null);
+                });
+                break;
+            default:
+                info(cfg.messages.startUpCheck);
+                runAsyncCheck(false, null);
+        }
+    }
+
     private void saveDefaultConfigFile() {
         if (!getDataFolder().exists()) {
             getDataFolder().mkdirs();
@@ -60,38 +174,113 @@ public class SpigotGeyserUpdaterPlugin extends JavaPlugin implements Listener {
     }
 
     private void runAsyncCheck(boolean manual, CommandSender sender) {
+        // Scheduled checks may wait for the quiet window; manual and login checks always run in full
+        runAsyncCheck(manual, sender, !manual && sender == null);
+    }
+
+    private void runAsyncCheck(boolean manual, CommandSender sender, boolean deferrable) {
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-            UpdaterService service = new UpdaterService(new SpigotLogger(), cfg);
+            // Any check starting now covers pushes received so far
+            if (webhook != null) webhook.checkStarted();
             if (manual) {
                 sendTo(sender, cfg.messages.prefix + cfg.messages.manualTriggered);
             } else {
                 info(cfg.messages.checking);
             }
             Path pluginsDir = getDataFolder().toPath().getParent(); // This is directly under plugins
+            // Outside the quiet window a deferrable check only finds out what is pending
+            boolean deferHeavy = deferrable && !isQuietNow();
             List<UpdaterService.UpdateOutcome> results =
-                    service.checkAndUpdate(Platform.SPIGOT, pluginsDir);
+                    service.checkAndUpdate(Platform.SPIGOT, pluginsDir, deferHeavy,
+                            // Whoever ran /geyserupdate sees the download move; other checks stay quiet
+                            manual ? p -> msg(sender, p.format(cfg.messages)) : ProgressListener.NONE);
 
+            if (results.isEmpty()) {
+                msg(sender, cfg.messages.noTarget);
+            }
             boolean anyUpdated = false;
             for (UpdaterService.UpdateOutcome r : results) {
                 if (r.error.isPresent()) {
-                    msg(sender, cfg.messages.failed.replace("{project}", r.project.name().toLowerCase()).replace("{error}", r.error.get()));
+                    msg(sender, cfg.messages.failed.replace("{project}", r.project.id()).replace("{error}", r.error.get()));
+                } else if (r.pending) {
+                    msg(sender, cfg.messages.updatePending.replace("{project}", r.project.id()));
                 } else if (r.skippedNoChange) {
-                    msg(sender, cfg.messages.upToDate.replace("{project}", r.project.name().toLowerCase()));
+                    msg(sender, cfg.messages.upToDate.replace("{project}", r.project.id()));
                 } else if (r.updated) {
                     anyUpdated = true;
-                    msg(sender, cfg.messages.updated.replace("{project}", r.project.name().toLowerCase()));
+                    msg(sender, cfg.messages.updated.replace("{project}", r.project.id()));
                 }
             }
+            broadcast(CheckSummary.of(results), sender);
+            if (results.stream().anyMatch(r -> r.pending)) {
+                scheduleQuietRecheck();
+            } else if (!results.isEmpty() && results.stream().noneMatch(r -> r.error.isPresent())) {
+                history.recordSuccess(anyUpdated ? "updated" : "upToDate");
+            }
             if (anyUpdated) {
                 info(cfg.messages.promptRestart);
                 if (cfg.postUpdate.runRestartCommand && cfg.postUpdate.restartCommand != null && !cfg.postUpdate.restartCommand.isBlank()) {
-                    Bukkit.getScheduler().runTask(this, () -> Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cfg.postUpdate.restartCommand));
+                    Runnable restart = () -> Bukkit.getScheduler().runTask(this, () -> Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cfg.postUpdate.restartCommand));
+                    if (restartClient != null) {
+                        // Let the proxy decide when it is our turn, so the network keeps capacity
+                        info(cfg.messages.restartQueued);
+                        restartClient.requestRestart(restart);
+                    } else {
+                        restart.run();
+                    }
                 }
             }
             msg(sender, cfg.messages.done);
         });
     }
 
+    private boolean isQuietNow() {
+        return QuietWindow.isQuiet(cfg.quietWindow, onlinePlayers.get(), LocalTime.now());
+    }
+
+    /** Polls for the quiet window (no network traffic) and then runs the deferred check in full. */
+    private void scheduleQuietRecheck() {
+        if (!quietRecheckScheduled.compareAndSet(false, true)) return;
+        long ticks = TimeUnit.MINUTES.toSeconds(Math.max(1, cfg.quietWindow.recheckMinutes)) * 20L;
+        Bukkit.getScheduler().runTaskLaterAsynchronously(this, () -> {
+            quietRecheckScheduled.set(false);
+            if (isQuietNow()) {
+                runAsyncCheck(false, null);
+            } else {
+                scheduleQuietRecheck();
+            }
+        }, ticks);
+    }
+
+    /**
+     * Tells everyone who did not trigger the check about an applied update or a failed scheduled
+     * check, in one line per check.
+     */
+    private void broadcast(CheckSummary summary, CommandSender sender) {
+        if (!summary.anyUpdated() && !(summary.anyFailed() && sender == null)) return;
+        String line = summary.format(cfg.messages);
+        if (cfg.postUpdate.notifyConsole && sender instanceof Player) {
+            info(line);
+        }
+        if (cfg.postUpdate.notifyPlayersWithPermission) {
+            for (Player admin : admins.admins()) {
+                if (admin != sender) admin.sendMessage(cfg.messages.prefix + line);
+            }
+        }
+    }
+
+    private void refreshAdmin(Player p) {
+        if (cfg == null) return;
+        admins.update(p.getUniqueId(), p, p.hasPermission(cfg.adminLogin.permission));
+    }
+
+    private void rebuildAdmins() {
+        admins.clear();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            refreshAdmin(p);
+        }
+    }
+
     private void msg(CommandSender sender, String message) {
         if (sender != null) {
             sender.sendMessage(cfg.messages.prefix + message);
@@ -112,20 +301,51 @@ public class SpigotGeyserUpdaterPlugin extends JavaPlugin implements Listener {
         getLogger().info(m);
     }
 
+    @EventHandler
+    public void onServerLoad(ServerLoadEvent e) {
+        serverLoaded.complete(null);
+    }
+
     @EventHandler
     public void onJoin(PlayerJoinEvent e) {
-        if (!cfg.enabled) return;
-        if (!cfg.adminLogin.enabled) return;
+        onlinePlayers.incrementAndGet();
         Player p = e.getPlayer();
-        if (p.hasPermission(cfg.adminLogin.permission)) {
+        refreshAdmin(p);
+        if (cfg == null || !cfg.enabled) return;
+        if (!cfg.adminLogin.enabled) return;
+        if (admins.contains(p.getUniqueId())) {
             info(cfg.messages.adminLoginCheck);
             runAsyncCheck(false, p);
         }
     }
 
+    @EventHandler
+    public void onQuit(PlayerQuitEvent e) {
+        // Fired while the player is still listed, so the count can go down here
+        onlinePlayers.decrementAndGet();
+        admins.remove(e.getPlayer().getUniqueId());
+    }
+
+    // Permission plugins resend the command tree when a player's permissions change
+    @EventHandler
+    public void onCommandSend(PlayerCommandSendEvent e) {
+        refreshAdmin(e.getPlayer());
+    }
+
+    // Per-world permissions
+    @EventHandler
+    public void onWorldChange(PlayerChangedWorldEvent e) {
+        refreshAdmin(e.getPlayer());
+    }
+
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (!command.getName().equalsIgnoreCase("geyserupdate")) return false;
+        if (cfg == null) {
+            Config.Messages m = new Config().messages;
+            sender.sendMessage(m.prefix + m.stillStarting);
+            return true;
+        }
         if (!sender.hasPermission("geyserupdater.admin")) {
             sender.sendMessage(cfg.messages.prefix + cfg.messages.noPermission);
             return true;
@@ -139,6 +359,8 @@ public class SpigotGeyserUpdaterPlugin extends JavaPlugin implements Listener {
             }
             try {
                 this.cfg = cfgMgr.loadOrCreateDefault();
+                service.setConfig(cfg);
+                rebuildAdmins(); // the permission node may have changed
                 sender.sendMessage(cfg.messages.prefix + cfg.messages.reloadSuccess);
             } catch (Exception e) {
                 sender.sendMessage(cfg.messages.prefix + cfg.messages.reloadFailed.replace("{error}", e.getMessage()));
@@ -156,7 +378,7 @@ public class SpigotGeyserUpdaterPlugin extends JavaPlugin implements Listener {
                 try (java.util.stream.Stream<java.nio.file.Path> s = java.nio.file.Files.list(nested)) {
                     s.filter(p -> {
                         String name = p.getFileName().toString().toLowerCase();
-                        return name.endsWith(".jar") && (name.contains("geyser") || name.contains("floodgate"));
+                        return cfg.targets.all().stream().anyMatch(t -> t.matches(name));
                     }).forEach(p -> {
                         try {
                             java.nio.file.Path dest = correctPluginsDir.resolve(p.getFileName().toString());
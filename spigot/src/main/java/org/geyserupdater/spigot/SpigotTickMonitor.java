@@ -0,0 +1,85 @@
+package org.geyserupdater.spigot;
+
+import org.bukkit.Bukkit;
+import org.geyserupdater.core.load.LoadSignal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Samples main-thread load once per tick and exposes it to core as a {@link LoadSignal}.
+ * Paper's own MSPT/TPS figures are used when present; on plain Spigot MSPT is estimated
+ * from the CPU time the main thread consumed between two ticks.
+ */
+class SpigotTickMonitor implements LoadSignal, Runnable {
+    // Smoothing factor for the moving averages, roughly a 2 second window at 20 TPS
+    private static final double ALPHA = 0.05;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported;
+    private final Method paperTickTime;
+    private final Method paperTps;
+
+    private long lastTickNanos;
+    private long lastCpuNanos = -1;
+    private volatile double intervalMs = 50.0;
+    private volatile double cpuMs = Double.NaN;
+
+    SpigotTickMonitor() {
+        this.cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+        this.paperTickTime = findMethod("getAverageTickTime");
+        this.paperTps = findMethod("getTPS");
+    }
+
+    /** Must be scheduled to run every tick on the main thread. */
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (lastTickNanos != 0) {
+            intervalMs += ALPHA * ((now - lastTickNanos) / 1_000_000.0 - intervalMs);
+        }
+        lastTickNanos = now;
+
+        if (cpuTimeSupported && paperTickTime == null) {
+            long cpu = threads.getCurrentThreadCpuTime();
+            if (lastCpuNanos >= 0 && cpu >= lastCpuNanos) {
+                double sample = (cpu - lastCpuNanos) / 1_000_000.0;
+                cpuMs = Double.isNaN(cpuMs) ? sample : cpuMs + ALPHA * (sample - cpuMs);
+            }
+            lastCpuNanos = cpu;
+        }
+    }
+
+    @Override
+    public double mspt() {
+        if (paperTickTime != null) {
+            try {
+                return ((Number) paperTickTime.invoke(Bukkit.getServer())).doubleValue();
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // fall through to our own estimate
+            }
+        }
+        return cpuMs;
+    }
+
+    @Override
+    public double tps() {
+        if (paperTps != null) {
+            try {
+                return ((double[]) paperTps.invoke(Bukkit.getServer()))[0];
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // fall through to our own estimate
+            }
+        }
+        return Math.min(20.0, 1000.0 / intervalMs);
+    }
+
+    private static Method findMethod(String name) {
+        try {
+            return Bukkit.getServer().getClass().getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
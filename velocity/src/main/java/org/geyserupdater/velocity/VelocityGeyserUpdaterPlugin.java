@@ -4,20 +4,40 @@ import com.google.inject.Inject;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.event.proxy.ListenerBoundEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
+import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import net.kyori.adventure.text.Component;
+import org.geyserupdater.core.AdminRegistry;
+import org.geyserupdater.core.CheckHistory;
+import org.geyserupdater.core.CheckSummary;
 import org.geyserupdater.core.Config;
 import org.geyserupdater.core.ConfigManager;
 import org.geyserupdater.core.Platform;
+import org.geyserupdater.core.ProgressListener;
+import org.geyserupdater.core.QuietWindow;
+import org.geyserupdater.core.StartupPolicy;
 import org.geyserupdater.core.UpdaterService;
 import org.geyserupdater.core.logging.LogAdapter;
+import org.geyserupdater.core.metrics.MetricsServer;
+import org.geyserupdater.core.restart.BackendStatus;
+import org.geyserupdater.core.restart.RestartCoordinator;
+import org.geyserupdater.core.webhook.WebhookServer;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 @Plugin(
@@ -32,7 +52,16 @@ public class VelocityGeyserUpdaterPlugin {
     private final Path dataDir;
 
     private ConfigManager cfgMgr;
-    private Config cfg;
+    private CheckHistory history;
+    private final CompletableFuture<Void> listenerBound = new CompletableFuture<>();
+    // Both are null until the async bootstrap has finished
+    private volatile Config cfg;
+    private volatile UpdaterService service;
+    private RestartCoordinator coordinator;
+    private MetricsServer metricsServer;
+    private WebhookServer webhook;
+    private final AdminRegistry<Player> admins = new AdminRegistry<>();
+    private final AtomicBoolean quietRecheckScheduled = new AtomicBoolean();
 
     @Inject
     public VelocityGeyserUpdaterPlugin(ProxyServer proxy, Logger logger, @DataDirectory Path dataDir) {
@@ -49,11 +78,8 @@ public class VelocityGeyserUpdaterPlugin {
             // Note: cfg not loaded yet, so we can't use cfg.messages here
             logger.severe("Could not create data directory: " + ex.getMessage());
         }
-        this.cfgMgr = new ConfigManager(dataDir);
-        this.cfg = cfgMgr.loadOrCreateDefault();
-
-        // Execute migration
-        migrateNestedPluginsIfNeeded(dataDir.getParent());
+        this.cfgMgr = new ConfigManager(dataDir, new VelocityLogger());
+        this.history = new CheckHistory(dataDir);
 
         // Register command
         proxy.getCommandManager().register(
@@ -64,14 +90,46 @@ public class VelocityGeyserUpdaterPlugin {
         // Note: Main instance is automatically registered for events, explicit register not needed
         // Example: do not call proxy.getEventManager().register(this, this);
 
+        // Config parsing, migration and the HTTP client are all set up off the initialize event
+        proxy.getScheduler().buildTask(this, this::bootstrap).schedule();
+    }
+
+    @Subscribe
+    public void onListenerBound(ListenerBoundEvent e) {
+        listenerBound.complete(null);
+    }
+
+    private void bootstrap() {
+        Config loaded = cfgMgr.loadOrCreateDefault();
+        this.service = new UpdaterService(new VelocityLogger(), loaded);
+        this.cfg = loaded;
+        history.lastSuccess().ifPresent(service.metrics()::seedLastSuccess);
+        if (cfg.metrics.enabled) {
+            startMetrics();
+        }
+
+        service.cleanStaging(dataDir.getParent());
+        // Players who joined while we were loading
+        rebuildAdmins();
+
+        // Execute migration
+        migrateNestedPluginsIfNeeded(dataDir.getParent());
+
         if (!cfg.enabled) {
             logger.info(cfg.messages.pluginDisabled);
             return;
         }
 
+        if (cfg.restartCoordinator.enabled) {
+            startCoordinator();
+        }
+
+        if (cfg.webhook.enabled) {
+            startWebhook();
+        }
+
         if (cfg.checkOnStartup) {
-            logger.info(cfg.messages.startUpCheck);
-            runAsyncCheck(false, null);
+            scheduleStartupCheck();
         }
         if (cfg.periodic.enabled && cfg.periodic.intervalHours > 0) {
             logger.info(cfg.messages.periodicCheck.replace("{hours}", String.valueOf(cfg.periodic.intervalHours)));
@@ -82,28 +140,125 @@ public class VelocityGeyserUpdaterPlugin {
         }
     }
 
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent e) {
+        if (coordinator != null) coordinator.close();
+        if (metricsServer != null) metricsServer.close();
+        if (webhook != null) webhook.close();
+        if (service != null) service.close();
+        admins.clear();
+    }
+
+    private void startCoordinator() {
+        coordinator = new RestartCoordinator(new VelocityLogger(), cfg, new BackendStatus() {
+            @Override
+            public int playerCount(String server) {
+                return proxy.getServer(server).map(s -> s.getPlayersConnected().size()).orElse(-1);
+            }
+
+            @Override
+            public int totalPlayers() {
+                return proxy.getPlayerCount();
+            }
+        });
+        try {
+            coordinator.start();
+            logger.info(cfg.messages.coordinatorStarted.replace("{address}", String.valueOf(coordinator.address())));
+        } catch (IOException e) {
+            logger.warning(cfg.messages.coordinatorFailed.replace("{error}", String.valueOf(e.getMessage())));
+            coordinator.close();
+            coordinator = null;
+        }
+    }
+
+    private void startMetrics() {
+        metricsServer = new MetricsServer(cfg.metrics, service);
+        try {
+            metricsServer.start();
+            logger.info(cfg.messages.metricsStarted.replace("{address}", cfg.metrics.host + ":" + metricsServer.address().getPort()));
+        } catch (IOException e) {
+            logger.warning(cfg.messages.metricsFailed.replace("{error}", String.valueOf(e.getMessage())));
+            metricsServer.close();
+            metricsServer = null;
+        }
+    }
+
+    private void startWebhook() {
+        // A push announces a build worth having now, so its check does not wait for the quiet window
+        webhook = new WebhookServer(new VelocityLogger(), cfg, () -> runAsyncCheck(false, null, false));
+        try {
+            webhook.start();
+            logger.info(cfg.messages.webhookStarted
+                    .replace("{address}", cfg.webhook.host + ":" + webhook.address().getPort())
+                    .replace("{path}", webhook.path()));
+        } catch (IOException e) {
+            logger.warning(cfg.messages.webhookFailed.replace("{error}", String.valueOf(e.getMessage())));
+            webhook.close();
+            webhook = null;
+        }
+    }
+
+    private void scheduleStartupCheck() {
+        switch (StartupPolicy.decide(cfg, history, Instant.now())) {
+            case SKIP:
+                logger.info(cfg.messages.startUpCheckSkipped.replace("{minutes}", String.valueOf(cfg.startup.skipIfCheckedWithinMinutes)));
+                break;
+            case DEFER:
+                logger.info(cfg.messages.startUpCheckDeferred);
+                listenerBound.thenRun(() -> {
+                    logger.info(cfg.messages.startUpCheck);
+                    runAsyncCheck(false, null);
+                });
+                break;
+            default:
+                logger.info(cfg.messages.startUpCheck);
+                runAsyncCheck(false, null);
+        }
+    }
+
     private void runAsyncCheck(boolean manual, CommandSource sender) {
+        // Scheduled checks may wait for the quiet window; manual and login checks always run in full
+        runAsyncCheck(manual, sender, !manual && sender == null);
+    }
+
+    private void runAsyncCheck(boolean manual, CommandSource sender, boolean deferrable) {
         proxy.getScheduler().buildTask(this, () -> {
-            UpdaterService service = new UpdaterService(new VelocityLogger(), cfg);
+            // Any check starting now covers pushes received so far
+            if (webhook != null) webhook.checkStarted();
             if (manual) {
                 send(sender, cfg.messages.prefix + cfg.messages.manualTriggered);
             } else {
                 logger.info(cfg.messages.checking);
             }
             Path pluginsDir = dataDir.getParent(); // This is directly under plugins
-            List<UpdaterService.UpdateOutcome> results = service.checkAndUpdate(Platform.VELOCITY, pluginsDir);
+            // Outside the quiet window a deferrable check only finds out what is pending
+            boolean deferHeavy = deferrable && !isQuietNow();
+            List<UpdaterService.UpdateOutcome> results = service.checkAndUpdate(Platform.VELOCITY, pluginsDir, deferHeavy,
+                    // Whoever ran /geyserupdate sees the download move; other checks stay quiet
+                    manual ? p -> msg(sender, p.format(cfg.messages)) : ProgressListener.NONE);
 
+            if (results.isEmpty()) {
+                msg(sender, cfg.messages.noTarget);
+            }
             boolean anyUpdated = false;
             for (UpdaterService.UpdateOutcome r : results) {
                 if (r.error.isPresent()) {
-                    msg(sender, cfg.messages.failed.replace("{project}", r.project.name().toLowerCase()).replace("{error}", r.error.get()));
+                    msg(sender, cfg.messages.failed.replace("{project}", r.project.id()).replace("{error}", r.error.get()));
+                } else if (r.pending) {
+                    msg(sender, cfg.messages.updatePending.replace("{project}", r.project.id()));
                 } else if (r.skippedNoChange) {
-                    msg(sender, cfg.messages.upToDate.replace("{project}", r.project.name().toLowerCase()));
+                    msg(sender, cfg.messages.upToDate.replace("{project}", r.project.id()));
                 } else if (r.updated) {
                     anyUpdated = true;
-                    msg(sender, cfg.messages.updated.replace("{project}", r.project.name().toLowerCase()));
+                    msg(sender, cfg.messages.updated.replace("{project}", r.project.id()));
                 }
             }
+            broadcast(CheckSummary.of(results), sender);
+            if (results.stream().anyMatch(r -> r.pending)) {
+                scheduleQuietRecheck();
+            } else if (!results.isEmpty() && results.stream().noneMatch(r -> r.error.isPresent())) {
+                history.recordSuccess(anyUpdated ? "updated" : "upToDate");
+            }
             if (anyUpdated) {
                 logger.info(cfg.messages.promptRestart);
                 if (cfg.postUpdate.runRestartCommand && cfg.postUpdate.restartCommand != null && !cfg.postUpdate.restartCommand.isBlank()) {
@@ -114,10 +269,32 @@ public class VelocityGeyserUpdaterPlugin {
         }).schedule();
     }
 
+    private boolean isQuietNow() {
+        return QuietWindow.isQuiet(cfg.quietWindow, proxy.getPlayerCount(), LocalTime.now());
+    }
+
+    /** Polls for the quiet window (no network traffic) and then runs the deferred check in full. */
+    private void scheduleQuietRecheck() {
+        if (!quietRecheckScheduled.compareAndSet(false, true)) return;
+        proxy.getScheduler().buildTask(this, () -> {
+            quietRecheckScheduled.set(false);
+            if (isQuietNow()) {
+                runAsyncCheck(false, null);
+            } else {
+                scheduleQuietRecheck();
+            }
+        }).delay(Math.max(1, cfg.quietWindow.recheckMinutes), TimeUnit.MINUTES).schedule();
+    }
+
     private class UpdateCommand implements SimpleCommand {
         @Override
         public void execute(Invocation invocation) {
             CommandSource src = invocation.source();
+            if (cfg == null) {
+                Config.Messages m = new Config().messages;
+                send(src, m.prefix + m.stillStarting);
+                return;
+            }
             if (!src.hasPermission("geyserupdater.admin")) {
                 send(src, cfg.messages.prefix + cfg.messages.noPermission);
                 return;
@@ -132,6 +309,8 @@ public class VelocityGeyserUpdaterPlugin {
                 }
                 try {
                     cfg = cfgMgr.loadOrCreateDefault();
+                    service.setConfig(cfg);
+                    rebuildAdmins(); // the permission node may have changed
                     send(src, cfg.messages.prefix + cfg.messages.reloadSuccess);
                 } catch (Exception e) {
                     send(src, cfg.messages.prefix + cfg.messages.reloadFailed.replace("{error}", e.getMessage()));
@@ -150,13 +329,55 @@ public class VelocityGeyserUpdaterPlugin {
 
     @Subscribe
     public void onPostLogin(PostLoginEvent e) {
-        if (!cfg.enabled || !cfg.adminLogin.enabled) return;
-        if (e.getPlayer().hasPermission(cfg.adminLogin.permission)) {
+        refreshAdmin(e.getPlayer());
+        if (cfg == null || !cfg.enabled || !cfg.adminLogin.enabled) return;
+        if (admins.contains(e.getPlayer().getUniqueId())) {
             logger.info(cfg.messages.adminLoginCheck);
             runAsyncCheck(false, e.getPlayer());
         }
     }
 
+    @Subscribe
+    public void onDisconnect(DisconnectEvent e) {
+        admins.remove(e.getPlayer().getUniqueId());
+    }
+
+    // Velocity has no permission-change event; a server switch is the usual point where they are re-evaluated
+    @Subscribe
+    public void onServerConnected(ServerConnectedEvent e) {
+        refreshAdmin(e.getPlayer());
+    }
+
+    private void refreshAdmin(Player p) {
+        if (cfg == null) return;
+        admins.update(p.getUniqueId(), p, p.hasPermission(cfg.adminLogin.permission));
+    }
+
+    private void rebuildAdmins() {
+        admins.clear();
+        for (Player p : proxy.getAllPlayers()) {
+            refreshAdmin(p);
+        }
+    }
+
+    /**
+     * Tells everyone who did not trigger the check about an applied update or a failed scheduled
+     * check, in one line per check.
+     */
+    private void broadcast(CheckSummary summary, CommandSource sender) {
+        if (!summary.anyUpdated() && !(summary.anyFailed() && sender == null)) return;
+        String line = summary.format(cfg.messages);
+        if (cfg.postUpdate.notifyConsole && sender instanceof Player) {
+            logger.info(line);
+        }
+        if (cfg.postUpdate.notifyPlayersWithPermission) {
+            Component component = Component.text(cfg.messages.prefix + line);
+            for (Player admin : admins.admins()) {
+                if (admin != sender) admin.sendMessage(component);
+            }
+        }
+    }
+
     private void msg(CommandSource sender, String msg) {
         if (sender != null) send(sender, cfg.messages.prefix + msg);
         else logger.info(msg);
@@ -173,7 +394,7 @@ public class VelocityGeyserUpdaterPlugin {
         try (java.util.stream.Stream<java.nio.file.Path> s = java.nio.file.Files.list(nested)) {
             s.filter(p -> {
                 String name = p.getFileName().toString().toLowerCase();
-                return name.endsWith(".jar") && (name.contains("geyser") || name.contains("floodgate"));
+                return cfg.targets.all().stream().anyMatch(t -> t.matches(name));
             }).forEach(p -> {
                 try {
                     java.nio.file.Path dest = correctPluginsDir.resolve(p.getFileName().toString());